@@ -0,0 +1,32 @@
+package com.ai.pagedview;
+
+/**
+ * Follows the scroll position of a {@link PagedView}, see
+ * {@link PagedView#addOnPageScrollListener(OnPageScrollListener)}.
+ *
+ */
+public interface OnPageScrollListener {
+	/**
+	 * Called at most once per frame while the pages move.
+	 *
+	 * @param position
+	 *            the page at the leading edge of the viewport
+	 * @param positionOffset
+	 *            how far the viewport has moved from position towards the
+	 *            next page, from 0 inclusive to 1 exclusive
+	 * @param positionOffsetPixels
+	 *            the same offset in pixels
+	 */
+	public void onPageScrolled(int position, float positionOffset,
+			int positionOffsetPixels);
+
+	/**
+	 * Called when the scroll state changes.
+	 *
+	 * @param state
+	 *            {@link PagedView#SCROLL_STATE_IDLE},
+	 *            {@link PagedView#SCROLL_STATE_DRAGGING} or
+	 *            {@link PagedView#SCROLL_STATE_SETTLING}
+	 */
+	public void onPageScrollStateChanged(int state);
+}
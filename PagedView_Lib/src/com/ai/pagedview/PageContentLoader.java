@@ -0,0 +1,24 @@
+package com.ai.pagedview;
+
+/**
+ * Loads the content of the pages around the current page of a
+ * {@link PagedView}, see {@link PagedView#setPageContentLoader}.
+ *
+ */
+public interface PageContentLoader<T> {
+	/**
+	 * Loads the content of a page. Called on a background thread, the result
+	 * is dropped if the page left the preload window in the meantime.
+	 */
+	public T loadPageContent(int page);
+
+	/**
+	 * Delivers the loaded content of a page, called on the UI thread.
+	 */
+	public void onPageContentLoaded(int page, T content);
+
+	/**
+	 * Called on the UI thread when a loaded page leaves the preload window.
+	 */
+	public void onPageContentUnloaded(int page);
+}
@@ -0,0 +1,223 @@
+package com.ai.pagedview;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import android.util.SparseArray;
+
+/**
+ * Times the draw of every page of a {@link PagedView} and keeps a rolling
+ * histogram per page, enabled with
+ * {@link PagedView#setDrawProfilingEnabled(boolean)}. Recording allocates only
+ * the first time a page is drawn. Under hardware acceleration a draw records
+ * the display list of the page, or only reuses it if the page is unchanged.
+ * Rasterization happens later on the render thread and is not included.
+ *
+ */
+public class PageDrawProfiler {
+	/**
+	 * Bucket 0 holds draws under 64us, bucket i draws from 2^(i+5)us on, the
+	 * last bucket has no upper bound.
+	 */
+	public static final int BUCKET_COUNT = 16;
+	private static final int FIRST_BUCKET_SHIFT = 6;
+	// Once a page has this many samples its histogram is halved, so old draws
+	// fade out
+	private static final int ROLLING_WINDOW = 256;
+
+	private static final int BINARY_MAGIC = 0x50445046; // "PDPF"
+	private static final int BINARY_VERSION = 1;
+
+	/**
+	 * The draw times of one page in microseconds.
+	 */
+	public static class PageStats {
+		final int[] mBuckets = new int[BUCKET_COUNT];
+		int mSampleCount;
+		long mTotalMicros;
+		int mMaxMicros;
+		int mLastMicros;
+
+		void add(int micros) {
+			if (mSampleCount >= ROLLING_WINDOW) {
+				mSampleCount = 0;
+				for (int i = 0; i < BUCKET_COUNT; i++) {
+					mBuckets[i] >>= 1;
+					mSampleCount += mBuckets[i];
+				}
+				mTotalMicros >>= 1;
+			}
+			mBuckets[bucketOf(micros)]++;
+			mSampleCount++;
+			mTotalMicros += micros;
+			mMaxMicros = Math.max(mMaxMicros, micros);
+			mLastMicros = micros;
+		}
+
+		/**
+		 * @return the number of samples in the rolling window
+		 */
+		public int getSampleCount() {
+			return mSampleCount;
+		}
+
+		public int getBucketCount(int bucket) {
+			return mBuckets[bucket];
+		}
+
+		public int getMeanMicros() {
+			return mSampleCount == 0 ? 0 : (int) (mTotalMicros / mSampleCount);
+		}
+
+		/**
+		 * @return the longest draw since profiling started
+		 */
+		public int getMaxMicros() {
+			return mMaxMicros;
+		}
+
+		public int getLastMicros() {
+			return mLastMicros;
+		}
+
+		/**
+		 * @return the upper bound of the bucket holding the given fraction of
+		 *         the samples, or the maximum for the last bucket
+		 */
+		public int getPercentileMicros(float fraction) {
+			if (mSampleCount == 0)
+				return 0;
+			final int rank = (int) Math.ceil(mSampleCount * fraction);
+			int seen = 0;
+			for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+				seen += mBuckets[i];
+				if (seen >= rank)
+					return Math.min(mMaxMicros, bucketUpperBound(i));
+			}
+			return mMaxMicros;
+		}
+	}
+
+	private final SparseArray<PageStats> mPages = new SparseArray<PageStats>();
+
+	static int bucketOf(int micros) {
+		int bucket = 0;
+		int bound = 1 << FIRST_BUCKET_SHIFT;
+		while (micros >= bound && bucket < BUCKET_COUNT - 1) {
+			bucket++;
+			bound <<= 1;
+		}
+		return bucket;
+	}
+
+	/**
+	 * @return the exclusive upper bound of the bucket in microseconds
+	 */
+	public static int bucketUpperBound(int bucket) {
+		return 1 << (FIRST_BUCKET_SHIFT + bucket);
+	}
+
+	void record(int page, long drawNanos) {
+		PageStats stats = mPages.get(page);
+		if (stats == null) {
+			stats = new PageStats();
+			mPages.put(page, stats);
+		}
+		stats.add((int) Math.min(Integer.MAX_VALUE, drawNanos / 1000));
+	}
+
+	/**
+	 * @return the stats of the page, or null if it was not drawn yet
+	 */
+	public PageStats getStats(int page) {
+		return mPages.get(page);
+	}
+
+	/**
+	 * @return the number of pages with stats, see {@link #getPageAt(int)}
+	 */
+	public int getPageCount() {
+		return mPages.size();
+	}
+
+	public int getPageAt(int index) {
+		return mPages.keyAt(index);
+	}
+
+	/**
+	 * @return the page with the highest mean draw time, or
+	 *         {@link PagedView#INVALID_INDEX}
+	 */
+	public int getSlowestPage() {
+		int slowest = PagedView.INVALID_INDEX;
+		int slowestMean = -1;
+		for (int i = 0; i < mPages.size(); i++) {
+			final int mean = mPages.valueAt(i).getMeanMicros();
+			if (mean > slowestMean) {
+				slowestMean = mean;
+				slowest = mPages.keyAt(i);
+			}
+		}
+		return slowest;
+	}
+
+	public void reset() {
+		mPages.clear();
+	}
+
+	/**
+	 * Writes one line per page: page, samples, mean, p50, p90, p99 and max in
+	 * microseconds.
+	 */
+	public void dumpText(Writer writer) throws IOException {
+		final PrintWriter out = new PrintWriter(writer);
+		out.println("page samples mean p50 p90 p99 max");
+		for (int i = 0; i < mPages.size(); i++) {
+			final PageStats stats = mPages.valueAt(i);
+			out.print(mPages.keyAt(i));
+			out.print(' ');
+			out.print(stats.mSampleCount);
+			out.print(' ');
+			out.print(stats.getMeanMicros());
+			out.print(' ');
+			out.print(stats.getPercentileMicros(0.5f));
+			out.print(' ');
+			out.print(stats.getPercentileMicros(0.9f));
+			out.print(' ');
+			out.print(stats.getPercentileMicros(0.99f));
+			out.print(' ');
+			out.println(stats.mMaxMicros);
+		}
+		out.flush();
+		if (out.checkError())
+			throw new IOException("Failed to write the draw profile");
+	}
+
+	/**
+	 * Writes the full histograms: a magic number, the format version, the
+	 * bucket count and the page count, then for every page its index, sample
+	 * count, total, max and last draw time followed by the buckets. All values
+	 * are big endian ints except the total, a long.
+	 */
+	public void dumpBinary(OutputStream stream) throws IOException {
+		final DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(BINARY_MAGIC);
+		out.writeInt(BINARY_VERSION);
+		out.writeInt(BUCKET_COUNT);
+		out.writeInt(mPages.size());
+		for (int i = 0; i < mPages.size(); i++) {
+			final PageStats stats = mPages.valueAt(i);
+			out.writeInt(mPages.keyAt(i));
+			out.writeInt(stats.mSampleCount);
+			out.writeLong(stats.mTotalMicros);
+			out.writeInt(stats.mMaxMicros);
+			out.writeInt(stats.mLastMicros);
+			for (int b = 0; b < BUCKET_COUNT; b++)
+				out.writeInt(stats.mBuckets[b]);
+		}
+		out.flush();
+	}
+}
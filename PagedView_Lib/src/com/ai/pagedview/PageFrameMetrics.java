@@ -0,0 +1,203 @@
+package com.ai.pagedview;
+
+import java.util.Arrays;
+
+/**
+ * Records the frames a {@link PagedView} draws while its pages move, from
+ * {@link PagedView#pageBeginMoving()} to {@link PagedView#pageEndMoving()},
+ * and sums each such session up in a {@link Snapshot}. Enabled with
+ * {@link PagedView#setFrameMetricsEnabled(boolean)}. Recording allocates
+ * nothing, only the snapshot at the end of a session is allocated.
+ *
+ */
+public class PageFrameMetrics {
+	// Draw times beyond this many frames per session are counted but not kept
+	// for the percentiles
+	private static final int MAX_SAMPLES = 600;
+	private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+	/**
+	 * Receives the snapshot of every finished session on the UI thread.
+	 */
+	public interface Listener {
+		public void onFrameMetrics(Snapshot snapshot);
+	}
+
+	/**
+	 * The frames of one session. Times are in milliseconds, draw times are
+	 * the time spent in {@link PagedView#dispatchDraw}.
+	 */
+	public static class Snapshot {
+		/** True if the session started with a drag rather than a snap */
+		public final boolean dragged;
+		public final long durationMillis;
+		public final int totalFrames;
+		/** Expected frames that were not drawn, counted in refresh intervals */
+		public final int droppedFrames;
+		/** Frames drawn late, i.e. at least one refresh interval was missed */
+		public final int jankFrames;
+		public final float frameIntervalMillis;
+		public final float drawTimeP50;
+		public final float drawTimeP90;
+		public final float drawTimeP99;
+		public final float drawTimeMax;
+
+		Snapshot(boolean dragged, long durationMillis, int totalFrames,
+				int droppedFrames, int jankFrames, float frameIntervalMillis,
+				float drawTimeP50, float drawTimeP90, float drawTimeP99,
+				float drawTimeMax) {
+			this.dragged = dragged;
+			this.durationMillis = durationMillis;
+			this.totalFrames = totalFrames;
+			this.droppedFrames = droppedFrames;
+			this.jankFrames = jankFrames;
+			this.frameIntervalMillis = frameIntervalMillis;
+			this.drawTimeP50 = drawTimeP50;
+			this.drawTimeP90 = drawTimeP90;
+			this.drawTimeP99 = drawTimeP99;
+			this.drawTimeMax = drawTimeMax;
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot{dragged=" + dragged + ", duration="
+					+ durationMillis + "ms, frames=" + totalFrames
+					+ ", dropped=" + droppedFrames + ", jank=" + jankFrames
+					+ ", draw p50=" + drawTimeP50 + "ms p90=" + drawTimeP90
+					+ "ms p99=" + drawTimeP99 + "ms max=" + drawTimeMax + "ms}";
+		}
+	}
+
+	private final int[] mDrawTimesMicros = new int[MAX_SAMPLES];
+	private long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+	private Listener mListener;
+	private Snapshot mLastSnapshot;
+
+	private boolean mInSession;
+	private boolean mDragged;
+	private long mSessionStartNanos;
+	private long mLastFrameStartNanos;
+	// Set when the finger moved the pages, a drag frame can only be late once
+	// it was asked for
+	private boolean mFramePending;
+	private long mFrameRequestNanos;
+	private int mFrameCount;
+	private int mDroppedFrames;
+	private int mJankFrames;
+	private int mMaxDrawMicros;
+
+	public void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	public Listener getListener() {
+		return mListener;
+	}
+
+	/**
+	 * @return the snapshot of the last finished session, or null
+	 */
+	public Snapshot getLastSnapshot() {
+		return mLastSnapshot;
+	}
+
+	/**
+	 * Sets the display refresh rate the frame intervals are compared with.
+	 */
+	public void setRefreshRate(float framesPerSecond) {
+		mFrameIntervalNanos = framesPerSecond > 1 ? (long) (1000000000L / framesPerSecond)
+				: DEFAULT_FRAME_INTERVAL_NANOS;
+	}
+
+	public boolean isInSession() {
+		return mInSession;
+	}
+
+	void beginSession(long nowNanos, boolean dragged) {
+		mInSession = true;
+		mDragged = dragged;
+		mSessionStartNanos = nowNanos;
+		mLastFrameStartNanos = 0;
+		mFramePending = false;
+		mFrameCount = 0;
+		mDroppedFrames = 0;
+		mJankFrames = 0;
+		mMaxDrawMicros = 0;
+	}
+
+	/**
+	 * Records that the finger moved the pages at the given time, in
+	 * {@link System#nanoTime()} base. Only the first move before a frame
+	 * counts.
+	 */
+	void onFrameRequested(long timeNanos) {
+		if (mInSession && !mFramePending) {
+			mFramePending = true;
+			mFrameRequestNanos = timeNanos;
+		}
+	}
+
+	/**
+	 * @param animating
+	 *            true if a snap animation runs, its frames are expected back
+	 *            to back. Otherwise a frame is only expected after the finger
+	 *            moved, so holding a drag still counts no missed frames.
+	 */
+	void onFrameDrawn(long startNanos, long endNanos, boolean animating) {
+		if (!mInSession)
+			return;
+
+		if (mLastFrameStartNanos != 0 && (animating || mFramePending)) {
+			// The frame was due one refresh interval after the previous frame,
+			// or after the move if the pages rested in between. Rounding
+			// absorbs the jitter of the draw start times.
+			final long due = animating ? mLastFrameStartNanos : Math.max(
+					mLastFrameStartNanos, mFrameRequestNanos);
+			final long missed = (startNanos - due + mFrameIntervalNanos / 2)
+					/ mFrameIntervalNanos - 1;
+			if (missed > 0) {
+				mDroppedFrames += missed;
+				mJankFrames++;
+			}
+		}
+		mFramePending = false;
+		mLastFrameStartNanos = startNanos;
+
+		final int drawMicros = (int) Math.min(Integer.MAX_VALUE,
+				(endNanos - startNanos) / 1000);
+		if (mFrameCount < MAX_SAMPLES)
+			mDrawTimesMicros[mFrameCount] = drawMicros;
+		mMaxDrawMicros = Math.max(mMaxDrawMicros, drawMicros);
+		mFrameCount++;
+	}
+
+	void endSession(long nowNanos) {
+		if (!mInSession)
+			return;
+		mInSession = false;
+
+		final int samples = Math.min(mFrameCount, MAX_SAMPLES);
+		Arrays.sort(mDrawTimesMicros, 0, samples);
+		mLastSnapshot = new Snapshot(mDragged,
+				(nowNanos - mSessionStartNanos) / 1000000, mFrameCount,
+				mDroppedFrames, mJankFrames, mFrameIntervalNanos / 1000000f,
+				percentile(samples, 0.5f), percentile(samples, 0.9f),
+				percentile(samples, 0.99f), mMaxDrawMicros / 1000f);
+		if (mListener != null)
+			mListener.onFrameMetrics(mLastSnapshot);
+	}
+
+	/**
+	 * Drops the running session without reporting it.
+	 */
+	void cancelSession() {
+		mInSession = false;
+	}
+
+	private float percentile(int samples, float fraction) {
+		if (samples == 0)
+			return 0;
+		final int index = Math.min(samples - 1, (int) (samples * fraction));
+		return mDrawTimesMicros[index] / 1000f;
+	}
+}
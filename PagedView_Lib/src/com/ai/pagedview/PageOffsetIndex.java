@@ -0,0 +1,105 @@
+package com.ai.pagedview;
+
+/**
+ * Prefix sums of the page sizes along one axis of a {@link PagedView}. Built
+ * once per measure pass, it answers page offsets in O(1) and the page at a
+ * position in O(log n). Pages before the first and after the last page (used
+ * in circular mode) are extrapolated with the stride of the first page.
+ *
+ */
+public class PageOffsetIndex {
+	private int[] mOffsets;
+	private int mPageCount;
+	private int mSpacing;
+	private int mFirstStride;
+	private boolean mValid;
+
+	public PageOffsetIndex(int capacity) {
+		mOffsets = new int[Math.max(1, capacity) + 1];
+	}
+
+	public boolean isValid() {
+		return mValid;
+	}
+
+	public void invalidate() {
+		mValid = false;
+	}
+
+	/**
+	 * Starts rebuilding the index, followed by one
+	 * {@link #setPageSize(int, int)} per page in order and {@link #end(int)}.
+	 */
+	public void begin(int pageCount, int start, int spacing) {
+		if (mOffsets.length < pageCount + 1) {
+			mOffsets = new int[Math.max(pageCount + 1, mOffsets.length * 2)];
+		}
+		mPageCount = pageCount;
+		mSpacing = spacing;
+		mOffsets[0] = start;
+	}
+
+	public void setPageSize(int page, int size) {
+		mOffsets[page + 1] = mOffsets[page] + size + mSpacing;
+	}
+
+	public void end(int firstPageSize) {
+		mFirstStride = firstPageSize + mSpacing;
+		mValid = true;
+	}
+
+	public int getPageCount() {
+		return mPageCount;
+	}
+
+	/**
+	 * @return the leading edge of the page, page may be negative or past the
+	 *         last page
+	 */
+	public int getOffset(int page) {
+		if (page < 0) {
+			return mOffsets[0] + page * mFirstStride;
+		} else if (page > mPageCount) {
+			return mOffsets[mPageCount] + (page - mPageCount) * mFirstStride;
+		}
+		return mOffsets[page];
+	}
+
+	/**
+	 * @return the size of the page without spacing, or the size of the first
+	 *         page for pages out of range
+	 */
+	public int getPageSize(int page) {
+		if (page < 0 || page >= mPageCount) {
+			return mFirstStride - mSpacing;
+		}
+		return mOffsets[page + 1] - mOffsets[page] - mSpacing;
+	}
+
+	/**
+	 * @return the page whose range, including the spacing after it, contains
+	 *         the position. Positions before the first or after the last page
+	 *         give negative or out of range pages.
+	 */
+	public int getPageAt(int position) {
+		if (position < mOffsets[0]) {
+			return mFirstStride <= 0 ? -1 : -1
+					- (mOffsets[0] - position - 1) / mFirstStride;
+		} else if (position >= mOffsets[mPageCount]) {
+			return mFirstStride <= 0 ? mPageCount : mPageCount
+					+ (position - mOffsets[mPageCount]) / mFirstStride;
+		}
+
+		int low = 0;
+		int high = mPageCount - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (mOffsets[mid] <= position) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+}
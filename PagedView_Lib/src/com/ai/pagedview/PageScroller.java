@@ -0,0 +1,145 @@
+package com.ai.pagedview;
+
+import android.view.animation.Interpolator;
+
+/**
+ * Computes the position of a page snap from an explicit frame time, so the
+ * animation can be driven by the vsync timestamp instead of by the moment it
+ * happens to be polled. Mirrors the parts of {@link android.widget.Scroller}
+ * used by {@link PagedView}, so code calling them on
+ * {@link PagedView#mScroller} compiles unchanged. It is not a Scroller and has
+ * no fling().
+ *
+ */
+public class PageScroller {
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final Interpolator mInterpolator;
+
+	private int mStartX;
+	private int mStartY;
+	private int mFinalX;
+	private int mFinalY;
+	private int mCurrX;
+	private int mCurrY;
+	private long mStartTimeNanos;
+	private long mDurationNanos;
+	private boolean mFinished = true;
+	private boolean mFirstFrame;
+
+	public PageScroller(Interpolator interpolator) {
+		mInterpolator = interpolator;
+	}
+
+	/**
+	 * Starts a scroll, the first frame computed afterwards is its time origin
+	 * if that frame is older than this call.
+	 */
+	public void startScroll(int startX, int startY, int dx, int dy,
+			int duration) {
+		mStartX = mCurrX = startX;
+		mStartY = mCurrY = startY;
+		mFinalX = startX + dx;
+		mFinalY = startY + dy;
+		mDurationNanos = Math.max(0, duration) * NANOS_PER_MILLI;
+		mStartTimeNanos = System.nanoTime();
+		mFirstFrame = true;
+		mFinished = false;
+	}
+
+	/**
+	 * Computes the position at the current time.
+	 */
+	public boolean computeScrollOffset() {
+		return computeScrollOffset(System.nanoTime());
+	}
+
+	/**
+	 * Computes the position at the given frame time, in
+	 * {@link System#nanoTime()} base.
+	 *
+	 * @return true if the animation was still running before this call
+	 */
+	public boolean computeScrollOffset(long frameTimeNanos) {
+		if (mFinished)
+			return false;
+
+		if (mFirstFrame) {
+			mFirstFrame = false;
+			if (frameTimeNanos < mStartTimeNanos)
+				mStartTimeNanos = frameTimeNanos;
+		}
+
+		final long elapsed = frameTimeNanos - mStartTimeNanos;
+		if (elapsed >= mDurationNanos) {
+			mCurrX = mFinalX;
+			mCurrY = mFinalY;
+			mFinished = true;
+		} else {
+			float t = Math.max(0, elapsed) / (float) mDurationNanos;
+			if (mInterpolator != null)
+				t = mInterpolator.getInterpolation(t);
+			mCurrX = mStartX + Math.round(t * (mFinalX - mStartX));
+			mCurrY = mStartY + Math.round(t * (mFinalY - mStartY));
+		}
+		return true;
+	}
+
+	public boolean isFinished() {
+		return mFinished;
+	}
+
+	public void forceFinished(boolean finished) {
+		mFinished = finished;
+	}
+
+	/**
+	 * Stops the animation at its final position.
+	 */
+	public void abortAnimation() {
+		mCurrX = mFinalX;
+		mCurrY = mFinalY;
+		mFinished = true;
+	}
+
+	public int getCurrX() {
+		return mCurrX;
+	}
+
+	public int getCurrY() {
+		return mCurrY;
+	}
+
+	public int getStartX() {
+		return mStartX;
+	}
+
+	public int getStartY() {
+		return mStartY;
+	}
+
+	public int getFinalX() {
+		return mFinalX;
+	}
+
+	public int getFinalY() {
+		return mFinalY;
+	}
+
+	public void setFinalX(int newX) {
+		mFinalX = newX;
+		mFinished = false;
+	}
+
+	public void setFinalY(int newY) {
+		mFinalY = newY;
+		mFinished = false;
+	}
+
+	/**
+	 * @return the duration of the current or last scroll in milliseconds
+	 */
+	public int getDuration() {
+		return (int) (mDurationNanos / NANOS_PER_MILLI);
+	}
+}
@@ -0,0 +1,137 @@
+package com.ai.pagedview;
+
+/**
+ * Estimates the velocity of one pointer from a fixed ring buffer of
+ * timestamped samples, by fitting a quadratic to the recent samples with least
+ * squares and taking its slope at the newest sample. Allocates nothing after
+ * construction and does not depend on the platform.
+ *
+ */
+public class PageVelocityTracker {
+	private static final int HISTORY_SIZE = 20;
+	// Only samples this recent take part in the fit
+	private static final long HORIZON_MILLIS = 100;
+	// A gap this long between two samples means the pointer stopped
+	private static final long ASSUME_STOPPED_MILLIS = 40;
+
+	private final float[] mX = new float[HISTORY_SIZE];
+	private final float[] mY = new float[HISTORY_SIZE];
+	private final long[] mTime = new long[HISTORY_SIZE];
+	private int mIndex = -1;
+	private int mSize = 0;
+
+	private float mXVelocity;
+	private float mYVelocity;
+
+	public void clear() {
+		mIndex = -1;
+		mSize = 0;
+		mXVelocity = 0;
+		mYVelocity = 0;
+	}
+
+	/**
+	 * Adds a sample, samples must come in chronological order.
+	 */
+	public void addSample(float x, float y, long eventTimeMillis) {
+		if (mSize > 0) {
+			final long gap = eventTimeMillis - mTime[mIndex];
+			if (gap <= 0) {
+				// Same event seen twice, e.g. by onInterceptTouchEvent and
+				// onTouchEvent
+				mX[mIndex] = x;
+				mY[mIndex] = y;
+				return;
+			}
+			if (gap > ASSUME_STOPPED_MILLIS) {
+				// The pointer rested, the older samples say nothing about the
+				// current motion
+				mSize = 0;
+			}
+		}
+		mIndex = (mIndex + 1) % HISTORY_SIZE;
+		mX[mIndex] = x;
+		mY[mIndex] = y;
+		mTime[mIndex] = eventTimeMillis;
+		if (mSize < HISTORY_SIZE)
+			mSize++;
+	}
+
+	/**
+	 * Computes the velocity at the newest sample.
+	 *
+	 * @param units
+	 *            the time unit of the velocity in milliseconds, 1000 gives
+	 *            pixels per second
+	 * @param maxVelocity
+	 *            the absolute velocity is clamped to this value
+	 */
+	public void computeCurrentVelocity(int units, float maxVelocity) {
+		mXVelocity = clamp(fitSlope(mX) * units, maxVelocity);
+		mYVelocity = clamp(fitSlope(mY) * units, maxVelocity);
+	}
+
+	public float getXVelocity() {
+		return mXVelocity;
+	}
+
+	public float getYVelocity() {
+		return mYVelocity;
+	}
+
+	private static float clamp(float velocity, float maxVelocity) {
+		if (velocity > maxVelocity)
+			return maxVelocity;
+		if (velocity < -maxVelocity)
+			return -maxVelocity;
+		return velocity;
+	}
+
+	/**
+	 * Fits position = a + b * t + c * t^2 over the samples inside the horizon,
+	 * t in milliseconds relative to the newest sample, and returns b. Falls
+	 * back to a linear fit when the quadratic one is degenerate.
+	 */
+	private float fitSlope(float[] position) {
+		if (mSize < 2)
+			return 0;
+
+		final long newestTime = mTime[mIndex];
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+		double p0 = 0, p1 = 0, p2 = 0;
+		for (int i = 0; i < mSize; i++) {
+			final int index = (mIndex - i + HISTORY_SIZE) % HISTORY_SIZE;
+			final double t = mTime[index] - newestTime;
+			if (-t > HORIZON_MILLIS)
+				break;
+			final double p = position[index];
+			final double t2 = t * t;
+			s0 += 1;
+			s1 += t;
+			s2 += t2;
+			s3 += t2 * t;
+			s4 += t2 * t2;
+			p0 += p;
+			p1 += p * t;
+			p2 += p * t2;
+		}
+		if (s0 < 2)
+			return 0;
+
+		if (s0 >= 3) {
+			// Cramer's rule on the normal equations, solving for b only
+			final double det = s0 * (s2 * s4 - s3 * s3) - s1
+					* (s1 * s4 - s2 * s3) + s2 * (s1 * s3 - s2 * s2);
+			if (Math.abs(det) > 1e-6) {
+				final double detB = s0 * (p1 * s4 - s3 * p2) - p0
+						* (s1 * s4 - s2 * s3) + s2 * (s1 * p2 - p1 * s2);
+				return (float) (detB / det);
+			}
+		}
+
+		final double det = s0 * s2 - s1 * s1;
+		if (Math.abs(det) < 1e-6)
+			return 0;
+		return (float) ((s0 * p1 - s1 * p0) / det);
+	}
+}
@@ -0,0 +1,29 @@
+package com.ai.pagedview;
+
+/**
+ * Implemented by page views that want to suspend rendering, timers or
+ * playback while they are off screen. The {@link PagedView} tells an attached
+ * page whenever the share of it inside the viewport changes, at most once per
+ * frame.
+ *
+ */
+public interface PageVisibilityAware {
+	/**
+	 * The page became fully visible.
+	 */
+	public void onPageVisible(int page);
+
+	/**
+	 * The page is partly inside the viewport.
+	 *
+	 * @param fraction
+	 *            the visible share of the page along the paging axis, greater
+	 *            than 0 and less than 1
+	 */
+	public void onPagePartiallyVisible(int page, float fraction);
+
+	/**
+	 * The page left the viewport, or was recycled while visible.
+	 */
+	public void onPageHidden(int page);
+}
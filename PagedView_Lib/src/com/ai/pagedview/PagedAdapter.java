@@ -0,0 +1,57 @@
+package com.ai.pagedview;
+
+import android.database.DataSetObservable;
+import android.database.DataSetObserver;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Supplies pages to a {@link PagedView}. Only a small window of pages around
+ * the current page is attached to the {@link PagedView}; pages that leave the
+ * window are passed to {@link #recyclePage(View, int)} and reused for the next
+ * page that has to be bound.
+ *
+ */
+public abstract class PagedAdapter {
+	private final DataSetObservable mObservable = new DataSetObservable();
+
+	/**
+	 * @return the total number of pages
+	 */
+	public abstract int getCount();
+
+	/**
+	 * Creates a new page view. Called only when there is no recycled page
+	 * available.
+	 */
+	public abstract View createPage(ViewGroup parent);
+
+	/**
+	 * Fills a freshly created or recycled page with the content of the given
+	 * position.
+	 */
+	public abstract void bindPage(View page, int position);
+
+	/**
+	 * Called when a page leaves the attached window, before it is kept for
+	 * reuse. Release anything heavy held by the page here.
+	 */
+	public void recyclePage(View page, int position) {
+	}
+
+	public void registerDataSetObserver(DataSetObserver observer) {
+		mObservable.registerObserver(observer);
+	}
+
+	public void unregisterDataSetObserver(DataSetObserver observer) {
+		mObservable.unregisterObserver(observer);
+	}
+
+	/**
+	 * Notifies the attached {@link PagedView} that the pages have changed, all
+	 * attached pages are rebound.
+	 */
+	public void notifyDataSetChanged() {
+		mObservable.notifyChanged();
+	}
+}
@@ -15,19 +15,33 @@ package com.ai.pagedview;
  See the License for the specific language governing permissions and
  limitations under the License.
  */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.animation.LayoutTransition;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.DataSetObserver;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.MotionEvent;
-import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.animation.Interpolator;
-import android.widget.Scroller;
+import android.view.animation.LayoutAnimationController;
 
 import com.doodleapp.pagedview.R;
 
@@ -54,14 +68,32 @@ public class PagedView extends ViewGroup implements
 	protected final static int TOUCH_STATE_PREV_PAGE = 2;
 	protected final static int TOUCH_STATE_NEXT_PAGE = 3;
 
+	/** The pages are at rest */
+	public static final int SCROLL_STATE_IDLE = 0;
+	/** The pages follow a touch */
+	public static final int SCROLL_STATE_DRAGGING = 1;
+	/** The pages animate towards a page after a release or a snap */
+	public static final int SCROLL_STATE_SETTLING = 2;
+
 	public static final int PAGE_SNAP_ANIMATION_DURATION = 300;
 	public static final int MAX_PAGE_SNAP_DURATION = 750;
+	public static final int MAX_MULTI_PAGE_SNAP_DURATION = 1500;
 	protected static final int SLOW_PAGE_SNAP_ANIMATION_DURATION = 950;
 	protected static final float NANOTIME_DIV = 1000000000.0f;
+	protected static final long NANOS_PER_MILLI = 1000000L;
 
 	protected static final int FLING_THRESHOLD_VELOCITY = 500;
 	protected static final int MIN_SNAP_VELOCITY = 1500;
 	protected static final int MIN_FLING_VELOCITY = 250;
+	// Deceleration used to project where a fling would land, in dp/s^2
+	protected static final float FLING_DECELERATION = 5000;
+	public static final int DEFAULT_MAX_FLING_PAGE_SKIP = 5;
+	public static final int DEFAULT_TELEPORT_THRESHOLD = 0;
+	// Used by jumpToPage() unless a threshold was set
+	public static final int JUMP_TELEPORT_THRESHOLD = 3;
+	// A drag that sends no sample for this long has stopped, the page then
+	// catches up with the pointer at once
+	protected static final int DRAG_STOP_MILLIS = 40;
 
 	protected static final int INVALID_POINTER = -1;
 	public static final int INVALID_INDEX = -2;
@@ -71,8 +103,15 @@ public class PagedView extends ViewGroup implements
 	public static final boolean ALLOW_SCROLL_DEFAULT = true;
 	public static final boolean AUTO_HEIGHT_DEFAULT = false;
 	public static final boolean ALLOW_CIRCULATE = false;
+	public static final int DEFAULT_ATTACHED_PAGE_WINDOW = 1;
 
-	protected Scroller mScroller;
+	// Was an android.widget.Scroller. PageScroller has the same methods for
+	// snaps, but not fling(), and Scroller cannot be subclassed to take a
+	// frame time because its getters are final
+	protected PageScroller mScroller;
+	// Drives mScroller from the vsync frame time on API 16+, older platforms
+	// poll it from computeScroll()
+	private ScrollFrameDriver mScrollFrameDriver;
 
 	protected int mCurrentPage;
 	protected int mNextPage = INVALID_INDEX;
@@ -84,6 +123,11 @@ public class PagedView extends ViewGroup implements
 	protected int mFlingThresholdVelocity;
 	protected int mMinFlingVelocity;
 	protected int mMinSnapVelocity;
+	protected float mFlingDeceleration;
+	// If set, a fling may skip several pages, see getFlingTargetPage()
+	protected boolean mMultiPageFling = false;
+	protected int mMaxFlingPageSkip = DEFAULT_MAX_FLING_PAGE_SKIP;
+	protected int mTeleportThreshold = DEFAULT_TELEPORT_THRESHOLD;
 
 	protected int mTouchState = TOUCH_STATE_REST;
 	protected boolean mScrolling = false;
@@ -113,10 +157,44 @@ public class PagedView extends ViewGroup implements
 	protected float mLastMotionX, mLastMotionY;
 	protected float mTouchX, mTouchY;
 	protected float mTotalMotionX, mTotalMotionY;
+	protected long mLastMotionTime;
+	// Sub-pixel drag distance not scrolled yet, and the distance the page
+	// lags behind the pointer while drag smoothing is on
+	protected float mDragRemainder;
+	protected float mDragLag;
+	protected float mMaxDragVelocity = 0;
+	// Posted once per stop check and re-armed from mLastMotionTime, so moves
+	// do not touch the message queue
+	private boolean mFlushDragLagPosted;
+	private final Runnable mFlushDragLag = new Runnable() {
+		@Override
+		public void run() {
+			mFlushDragLagPosted = false;
+			if (mTouchState != TOUCH_STATE_SCROLLING || mDragLag == 0)
+				return;
+			final long idle = SystemClock.uptimeMillis() - mLastMotionTime;
+			if (idle >= DRAG_STOP_MILLIS) {
+				flushDragLag();
+			} else {
+				mFlushDragLagPosted = true;
+				postDelayed(this, DRAG_STOP_MILLIS - idle);
+			}
+		}
+	};
 	// protected float mLastMotionXRemainder, mLastMotionYRemainder;
 
 	protected int mSnapDuration = PAGE_SNAP_ANIMATION_DURATION;
 	protected PagedViewListener mPagedViewListener;
+	protected final ArrayList<PagedViewListener> mPagedViewListeners = new ArrayList<PagedViewListener>();
+	protected final ArrayList<OnPageScrollListener> mPageScrollListeners = new ArrayList<OnPageScrollListener>();
+	protected int mScrollState = SCROLL_STATE_IDLE;
+	protected boolean mScrubbing;
+	// Set by scrollTo(), the listeners are told once per frame in
+	// computeScroll()
+	protected boolean mPageScrollPending;
+	protected PagedViewLogger mLogger = PagedViewLogger.NONE;
+	protected PageFrameMetrics mFrameMetrics;
+	protected PageDrawProfiler mDrawProfiler;
 
 	protected boolean mAutoHideIndicator = false;
 	// Everything about Page Moving
@@ -138,6 +216,47 @@ public class PagedView extends ViewGroup implements
 	protected static final float OVERSCROLL_ACCELERATE_FACTOR = 2;
 	protected static final float OVERSCROLL_DAMP_FACTOR = 0.14f;
 
+	// When an adapter is set, only the pages within mAttachedPageWindow of the
+	// page in the viewport and of the snap target are attached as children,
+	// keyed by page index. Detached pages are kept in mRecycledPages for reuse.
+	protected PagedAdapter mAdapter;
+	protected int mAttachedPageWindow = DEFAULT_ATTACHED_PAGE_WINDOW;
+	protected final SparseArray<View> mAttachedPages = new SparseArray<View>();
+	protected final ArrayList<View> mRecycledPages = new ArrayList<View>();
+	protected int mLastWidthMeasureSpec;
+	protected int mLastHeightMeasureSpec;
+	protected int mMeasuredPageCount = INVALID_INDEX;
+	protected boolean mMeasureNearbyPagesOnly = false;
+	private int mMeasuredViewportPage = INVALID_INDEX;
+	private int mPopulatedViewportPage = INVALID_INDEX;
+	private int mPopulatedTargetPage = INVALID_INDEX;
+	private final DataSetObserver mAdapterObserver = new DataSetObserver() {
+		@Override
+		public void onChanged() {
+			onAdapterDataChanged();
+		}
+
+		@Override
+		public void onInvalidated() {
+			onAdapterDataChanged();
+		}
+	};
+
+	// Pages within mPreloadWindow of the current page get their content loaded
+	// by mPageContentLoader on mPreloadExecutor, keyed by page index
+	protected int mPreloadWindow = TEMP_PAGE_COUNT;
+	protected PageContentLoader<?> mPageContentLoader;
+	protected ExecutorService mPreloadExecutor;
+	protected final SparseArray<PageLoadTask<?>> mPageLoads = new SparseArray<PageLoadTask<?>>();
+	private static ExecutorService sDefaultPreloadExecutor;
+
+	// Page offsets along each axis, rebuilt lazily after a measure pass or a
+	// change of the pages
+	protected final PageOffsetIndex mPageWidthOffsets = new PageOffsetIndex(
+			ENSURE_CAPACITY);
+	protected final PageOffsetIndex mPageHeightOffsets = new PageOffsetIndex(
+			ENSURE_CAPACITY);
+
 	public PagedView(Context context) {
 		this(context, null);
 	}
@@ -157,8 +276,11 @@ public class PagedView extends ViewGroup implements
 	@SuppressLint("NewApi")
 	protected void init() {
 		// mScroller = new Scroller(getContext());
-		mScroller = new Scroller(getContext(), new ScrollInterpolator());
+		mScroller = new PageScroller(new ScrollInterpolator());
 		// mScroller = new Scroller(getContext(), new AccelerateInterpolator());
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			mScrollFrameDriver = new ScrollFrameDriver();
+		}
 
 		mCenterPagesVertically = true;
 
@@ -172,6 +294,7 @@ public class PagedView extends ViewGroup implements
 		mFlingThresholdVelocity = (int) (FLING_THRESHOLD_VELOCITY);
 		mMinFlingVelocity = (int) (MIN_FLING_VELOCITY);
 		mMinSnapVelocity = (int) (MIN_SNAP_VELOCITY);
+		mFlingDeceleration = FLING_DECELERATION * mDensity;
 		setHapticFeedbackEnabled(false);
 		setOnHierarchyChangeListener(this);
 	}
@@ -197,6 +320,8 @@ public class PagedView extends ViewGroup implements
 
 		mPageSpacing = a.getDimensionPixelSize(
 				R.styleable.PagedView_pagedview_page_spacing, 0);
+		mPreloadWindow = Math.max(0, a.getInteger(
+				R.styleable.PagedView_pagedview_preload_window, TEMP_PAGE_COUNT));
 
 		a.recycle();
 	}
@@ -204,51 +329,218 @@ public class PagedView extends ViewGroup implements
 	@Override
 	protected void onLayout(boolean changed, int left, int top, int right,
 			int bottom) {
-		final int contentHeight = getMeasuredHeight()
-				- (getPaddingTop() + getPaddingBottom());
+		// Pages are placed from the offset index, layoutPage() leaves the
+		// pages alone whose size and position did not change
+		boolean pageMoved = false;
+		if (mAdapter != null) {
+			for (int i = 0; i < mAttachedPages.size(); i++) {
+				pageMoved |= layoutPage(mAttachedPages.valueAt(i),
+						mAttachedPages.keyAt(i));
+			}
+		} else {
+			final int childCount = getChildCount();
+			for (int i = 0; i < childCount; i++) {
+				pageMoved |= layoutPage(getChildAt(i), i);
+			}
+		}
 
-		final int childCount = getChildCount();
-		int childPaddingLeft = getRelativeChildPaddingLeft(0);
-		int childPaddingTop = getRelativeChildPaddingTop(0);
+		// Keep a running snap going if the content changed but no page moved
+		if (changed || pageMoved || mScroller.isFinished()) {
+			updateCurrentPageScroll();
+		}
+		if (changed || pageMoved) {
+			// Page visibility is refreshed with the next frame
+			mPageScrollPending = true;
+		}
+	}
 
-		for (int i = 0; i < childCount; i++) {
-			final View child = getChildAt(i);
-			if (child.getVisibility() != View.GONE) {
-				final int childWidth = child.getMeasuredWidth();
-				final int childHeight = child.getMeasuredHeight();
+	/**
+	 * Measures a page unless it was measured with the same specs before and
+	 * has not requested a layout since.
+	 * 
+	 * @return true if the measured size of the page changed
+	 */
+	protected boolean measurePage(View child, int parentWidthMeasureSpec,
+			int parentHeightMeasureSpec) {
+		final LayoutParams lp = child.getLayoutParams();
+		final int childWidthMeasureSpec = getChildMeasureSpec(
+				parentWidthMeasureSpec, getPaddingLeft() + getPaddingRight(),
+				lp.width);
+		final int childHeightMeasureSpec = getChildMeasureSpec(
+				parentHeightMeasureSpec, getPaddingTop() + getPaddingBottom(),
+				lp.height);
+
+		PageLayoutParams plp = null;
+		if (lp instanceof PageLayoutParams) {
+			plp = (PageLayoutParams) lp;
+			if (!child.isLayoutRequested()
+					&& plp.lastWidthMeasureSpec == childWidthMeasureSpec
+					&& plp.lastHeightMeasureSpec == childHeightMeasureSpec)
+				return false;
+		}
 
-				int childTop = getPaddingTop();
+		final int oldWidth = child.getMeasuredWidth();
+		final int oldHeight = child.getMeasuredHeight();
+		child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+		if (plp != null) {
+			plp.lastWidthMeasureSpec = childWidthMeasureSpec;
+			plp.lastHeightMeasureSpec = childHeightMeasureSpec;
+			plp.measured = true;
+		}
+		return oldWidth != child.getMeasuredWidth()
+				|| oldHeight != child.getMeasuredHeight();
+	}
 
-				if (mHorizontalMode) {
-					if (mCenterPagesVertically) {
-						childTop += (contentHeight - getScaledMeasuredHeight(child)) / 2;
-					}
-					child.layout(childPaddingLeft, childTop, childPaddingLeft
-							+ childWidth, childTop + childHeight);
-					childPaddingLeft += getScaledMeasuredWidth(child)
-							+ mPageSpacing;
-				} else {
-					if (mCenterPagesVertically) {
-						childTop += (contentHeight - getScaledMeasuredHeight(child)) / 2;
-					}
-					child.layout(childPaddingLeft, childPaddingTop,
-							childPaddingLeft + childWidth, childPaddingTop
-									+ childHeight);
-					childPaddingTop += getScaledMeasuredHeight(child)
-							+ mPageSpacing;
-				}
+	private boolean hasBeenMeasured(View child) {
+		final LayoutParams lp = child.getLayoutParams();
+		return !(lp instanceof PageLayoutParams)
+				|| ((PageLayoutParams) lp).measured;
+	}
+
+	private boolean isPageNearby(int page, int viewportPage) {
+		final int count = getPageCount();
+		if (page == INVALID_INDEX || count <= 0)
+			return true;
+		return pageDistance(page, normalizePage(viewportPage, count), count) <= mAttachedPageWindow;
+	}
+
+	/**
+	 * If set, a measure pass only measures the pages within the attached page
+	 * window of the viewport, other pages keep their last size until they come
+	 * near. Pages that were never measured are always measured.
+	 */
+	public void setMeasureNearbyPagesOnly(boolean nearbyOnly) {
+		mMeasureNearbyPagesOnly = nearbyOnly;
+		mMeasuredViewportPage = INVALID_INDEX;
+		requestLayout();
+	}
+
+	public boolean isMeasureNearbyPagesOnly() {
+		return mMeasureNearbyPagesOnly;
+	}
+
+	/**
+	 * Catches up on the measuring skipped for the pages that just came near
+	 * the viewport, without a full measure pass.
+	 */
+	protected void measurePagesNearViewport() {
+		final int count = getPageCount();
+		if (count <= 0 || mLastWidthMeasureSpec == 0
+				|| mLastHeightMeasureSpec == 0)
+			return;
+		final int viewportPage = normalizePage(getPageInViewport(), count);
+		if (viewportPage == mMeasuredViewportPage)
+			return;
+		mMeasuredViewportPage = viewportPage;
+
+		boolean pageSizeChanged = false;
+		for (int i = viewportPage - mAttachedPageWindow; i <= viewportPage
+				+ mAttachedPageWindow; i++) {
+			final View page = getPageView(isAllowCirculate() ? normalizePage(i,
+					count) : i);
+			if (page != null) {
+				pageSizeChanged |= measurePage(page, mLastWidthMeasureSpec,
+						mLastHeightMeasureSpec);
 			}
 		}
-		updateCurrentPageScroll();
+		if (pageSizeChanged) {
+			invalidatePageOffsets();
+			requestLayout();
+		}
+	}
+
+	@Override
+	protected LayoutParams generateDefaultLayoutParams() {
+		return new PageLayoutParams(LayoutParams.WRAP_CONTENT,
+				LayoutParams.WRAP_CONTENT);
+	}
+
+	@Override
+	public LayoutParams generateLayoutParams(AttributeSet attrs) {
+		return new PageLayoutParams(getContext(), attrs);
+	}
+
+	@Override
+	protected LayoutParams generateLayoutParams(LayoutParams p) {
+		return new PageLayoutParams(p);
+	}
+
+	@Override
+	protected boolean checkLayoutParams(LayoutParams p) {
+		return p instanceof PageLayoutParams;
+	}
+
+	/**
+	 * Layout params of a page, remembering the specs the page was last
+	 * measured with.
+	 */
+	public static class PageLayoutParams extends LayoutParams {
+		int lastWidthMeasureSpec;
+		int lastHeightMeasureSpec;
+		boolean measured;
+		// The visible share reported to the page last
+		float visibleFraction;
+		// Why the page is on a layer, see acquirePageLayer()
+		int layerReasons;
+		// True if the layer was set by us rather than by the page itself
+		boolean layerOwned;
+
+		public PageLayoutParams(Context c, AttributeSet attrs) {
+			super(c, attrs);
+		}
+
+		public PageLayoutParams(int width, int height) {
+			super(width, height);
+		}
+
+		public PageLayoutParams(LayoutParams source) {
+			super(source);
+		}
+	}
+
+	/**
+	 * Lays out a page at the offset of its page index. Pages whose bounds are
+	 * unchanged and that have not requested a layout are skipped.
+	 * 
+	 * @return true if the page was moved or resized
+	 */
+	protected boolean layoutPage(View child, int page) {
+		if (child.getVisibility() == View.GONE)
+			return false;
+
+		final int childWidth = child.getMeasuredWidth();
+		final int childHeight = child.getMeasuredHeight();
+		int childLeft;
+		int childTop;
+		if (mHorizontalMode) {
+			final int contentHeight = getMeasuredHeight()
+					- (getPaddingTop() + getPaddingBottom());
+			childLeft = getChildWidthOffset(page);
+			childTop = getPaddingTop();
+			if (mCenterPagesVertically) {
+				childTop += (contentHeight - getScaledMeasuredHeight(child)) / 2;
+			}
+		} else {
+			childLeft = getRelativeChildPaddingLeft(0);
+			childTop = getChildHeightOffset(page);
+		}
 
-		for (int i = 0; i < getChildCount(); i++) {
-			View child = getChildAt(i);
-			child.setDrawingCacheEnabled(false);
+		final boolean moved = child.getLeft() != childLeft
+				|| child.getTop() != childTop
+				|| child.getRight() != childLeft + childWidth
+				|| child.getBottom() != childTop + childHeight;
+		if (moved || child.isLayoutRequested()) {
+			child.layout(childLeft, childTop, childLeft + childWidth, childTop
+					+ childHeight);
 		}
+		return moved;
 	}
 
 	@Override
 	public void addView(View child, int index, LayoutParams params) {
+		if (mAdapter != null)
+			throw new IllegalStateException(
+					"addView() is not supported while an adapter is set");
 		index = Math.min(getChildCount(), index);
 		super.addView(child, index, params);
 		child.setDrawingCacheEnabled(false);
@@ -263,17 +555,89 @@ public class PagedView extends ViewGroup implements
 		onPageCountChanged(getPageCount());
 	}
 
+	// Nesting depth of beginBatchUpdate(), while > 0 page count changes are
+	// only recorded and reported once by the outermost endBatchUpdate()
+	protected int mBatchUpdateDepth = 0;
+	protected boolean mBatchPageCountChanged = false;
+
+	/**
+	 * Starts a batch of page additions and removals. Page count notifications
+	 * are held back until the matching {@link #endBatchUpdate()}. Batches may
+	 * be nested.
+	 */
+	public void beginBatchUpdate() {
+		mBatchUpdateDepth++;
+	}
+
+	/**
+	 * Ends a batch started with {@link #beginBatchUpdate()}, the outermost
+	 * call notifies the indicator of the new page count once.
+	 */
+	public void endBatchUpdate() {
+		if (mBatchUpdateDepth <= 0)
+			throw new IllegalStateException(
+					"endBatchUpdate() without beginBatchUpdate()");
+		if (--mBatchUpdateDepth > 0)
+			return;
+		if (mBatchPageCountChanged) {
+			mBatchPageCountChanged = false;
+			invalidatePageOffsets();
+			onPageCountChanged(getPageCount());
+			requestLayout();
+		}
+	}
+
+	public boolean isInBatchUpdate() {
+		return mBatchUpdateDepth > 0;
+	}
+
+	/**
+	 * Appends all the pages in one batch.
+	 */
+	public void addPages(List<? extends View> pages) {
+		beginBatchUpdate();
+		try {
+			for (int i = 0; i < pages.size(); i++) {
+				addView(pages.get(i));
+			}
+		} finally {
+			endBatchUpdate();
+		}
+	}
+
 	@Override
 	public void onChildViewAdded(View parent, View child) {
 		// This ensures that when children are added, they get the correct
 		// transforms / alphas
 		// in accordance with any scroll effects.
 		mForceScreenScrolled = true;
+		// attachPage() decides itself whether the offsets are still valid
+		if (!mInAdapterUpdate)
+			invalidatePageOffsets();
 		invalidate();
 	}
 
 	@Override
 	public void onChildViewRemoved(View parent, View child) {
+		if (!mInAdapterUpdate)
+			invalidatePageOffsets();
+		releasePageLayers(child);
+		mMovingLayerPages.remove(child);
+		if (child == mFirstWrapLayerPage)
+			mFirstWrapLayerPage = null;
+		if (child == mLastWrapLayerPage)
+			mLastWrapLayerPage = null;
+		if (child == mWarmUpView) {
+			mWarmUpView = null;
+			mPageLayerBudgetLeft += mWarmUpBytes;
+			mWarmUpBytes = 0;
+		}
+	}
+
+	@Override
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		invalidatePageOffsets();
 	}
 
 	@Override
@@ -301,19 +665,29 @@ public class PagedView extends ViewGroup implements
 		final int verticalPadding = getPaddingTop() + getPaddingBottom();
 		final int horizontalPadding = getPaddingLeft() + getPaddingRight();
 
+		mLastWidthMeasureSpec = widthMeasureSpec;
+		mLastHeightMeasureSpec = heightMeasureSpec;
+
 		final int childCount = getChildCount();
 
 		int maxChildWidth = childCount >= 0 ? 0 : widthSize;
 		int maxChildHeight = childCount >= 0 ? 0 : heightSize;
 
-		if (mScrollIndicator != null)
-			mScrollIndicator.onPageCountChanged(childCount);
-
+		final int viewportPage = mMeasureNearbyPagesOnly ? getPageInViewport()
+				: INVALID_INDEX;
+		boolean pageSizeChanged = false;
 		for (int i = 0; i < childCount; i++) {
 			// disallowing padding in paged view (just pass 0)
 			final View child = getChildAt(i);
 			if (child != null) {
-				measureChild(child, widthMeasureSpec, heightMeasureSpec);
+				// Without an adapter the child index is the page, the attached
+				// pages of an adapter are few
+				if (!mMeasureNearbyPagesOnly
+						|| isPageNearby(mAdapter != null ? indexOfPage(child) : i,
+								viewportPage) || !hasBeenMeasured(child)) {
+					pageSizeChanged |= measurePage(child, widthMeasureSpec,
+							heightMeasureSpec);
+				}
 				if (mHorizontalMode) {
 					maxChildHeight = Math.max(maxChildHeight,
 							child.getMeasuredHeight());
@@ -333,6 +707,8 @@ public class PagedView extends ViewGroup implements
 				widthSize = maxChildWidth + verticalPadding;
 		}
 
+		if (widthSize != getMeasuredWidth() || heightSize != getMeasuredHeight())
+			pageSizeChanged = true;
 		setMeasuredDimension(widthSize, heightSize);
 
 		if (childCount > 0) {
@@ -368,17 +744,37 @@ public class PagedView extends ViewGroup implements
 			}
 		}
 
+		// Children and spacing are final for this pass, rebuild the offsets
+		// on first use if anything they depend on changed
+		if (pageSizeChanged
+				|| (mPageWidthOffsets.isValid() && mPageWidthOffsets
+						.getOffset(0) != getRelativeChildPaddingLeft(0))
+				|| (mPageHeightOffsets.isValid() && mPageHeightOffsets
+						.getOffset(0) != getRelativeChildPaddingTop(0)))
+			invalidatePageOffsets();
+
 		if (getPageCount() <= mCurrentPage) {
 			mCurrentPage = getPageCount() - 1;
 		}
+		// Only move when the current page is not where it belongs, every
+		// scrollTo also invalidates the indicator
 		if (mHorizontalMode) {
-			scrollTo(mCurrentPage * getMeasuredWidth(), 0);
+			final int x = getChildWidthOffset(mCurrentPage)
+					- getRelativeChildPaddingLeft(mCurrentPage);
+			if (x != mUnboundedScrollX || mUnboundedScrollY != 0)
+				scrollTo(x, 0);
 		} else {
-			scrollTo(0, mCurrentPage * getMeasuredHeight());
+			final int y = getChildHeightOffset(mCurrentPage)
+					- getRelativeChildPaddingTop(mCurrentPage);
+			if (y != mUnboundedScrollY || mUnboundedScrollX != 0)
+				scrollTo(0, y);
 		}
 
 		final int pageCount = getPageCount();
-		onPageCountChanged(pageCount);
+		if (pageCount != mMeasuredPageCount) {
+			mMeasuredPageCount = pageCount;
+			onPageCountChanged(pageCount);
+		}
 
 		if (pageCount > 0) {
 			if (mHorizontalMode) {
@@ -466,23 +862,41 @@ public class PagedView extends ViewGroup implements
 		mTouchY = y;
 		mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
 
-		if (mScrollIndicator != null)
-			mScrollIndicator.invalidate();
+		if (mAdapter != null)
+			populatePages();
+		if (mAllowCirculate)
+			updateWrapPageLayers();
+		if (mMeasureNearbyPagesOnly)
+			measurePagesNearViewport();
+
+		mPageScrollPending = true;
 	}
 
 	// we moved this functionality to a helper function so SmoothPagedView can
 	// reuse it
 	protected boolean computeScrollHelper() {
-		if (mScroller.computeScrollOffset()) {
+		return computeScrollHelper(System.nanoTime());
+	}
+
+	/**
+	 * Moves the snap animation to its position at the given frame time and
+	 * settles on the target page in the frame the animation ends, without
+	 * requesting any further frame.
+	 */
+	protected boolean computeScrollHelper(long frameTimeNanos) {
+		if (mScroller.computeScrollOffset(frameTimeNanos)) {
 			// Don't bother scrolling if the page does not need to be moved
 			if (getScrollX() != mScroller.getCurrX()
 					|| getScrollY() != mScroller.getCurrY()
 					|| mOverScrollX != mScroller.getCurrX()) {
 				scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
 			}
-			invalidate();
-			return true;
-		} else if (mNextPage != INVALID_INDEX) {
+			if (!mScroller.isFinished()) {
+				requestScrollFrame();
+				return true;
+			}
+		}
+		if (mNextPage != INVALID_INDEX) {
 			if (!isAllowCirculate()) {
 				mCurrentPage = Math.max(0,
 						Math.min(getPageCount() - 1, mNextPage));
@@ -498,6 +912,9 @@ public class PagedView extends ViewGroup implements
 			// mCurrPage = Math.max(0, Math.min(mNextPage, getChildCount() -
 			// 1));
 			mNextPage = INVALID_INDEX;
+			mLogger.onSnapFinished(mCurrentPage);
+			if (mAdapter != null)
+				populatePages();
 
 			// Load the associated pages if necessary
 			if (mDeferLoadAssociatedPagesUntilScrollCompletes) {
@@ -511,6 +928,7 @@ public class PagedView extends ViewGroup implements
 			if (mTouchState == TOUCH_STATE_REST) {
 				pageEndMoving();
 				setCurrPage(getCurrentPage());
+				setScrollState(SCROLL_STATE_IDLE);
 			}
 			// setCurrPage(getCurrPage());
 			return true;
@@ -520,12 +938,58 @@ public class PagedView extends ViewGroup implements
 
 	@Override
 	public void computeScroll() {
-		computeScrollHelper();
+		if (mScrollFrameDriver != null) {
+			// Only make sure a frame is coming for scrolls started without one
+			if (!mScroller.isFinished() || mNextPage != INVALID_INDEX)
+				mScrollFrameDriver.post();
+		} else {
+			computeScrollHelper();
+		}
+		if (mPageScrollPending) {
+			mPageScrollPending = false;
+			dispatchPageScrolled();
+			dispatchPageVisibility();
+		}
+	}
+
+	/**
+	 * Requests the next frame of the snap animation.
+	 */
+	protected void requestScrollFrame() {
+		if (mScrollFrameDriver != null) {
+			mScrollFrameDriver.post();
+		} else {
+			invalidate();
+		}
+	}
+
+	@SuppressLint("NewApi")
+	private class ScrollFrameDriver implements Choreographer.FrameCallback {
+		private boolean mPosted;
+
+		void post() {
+			if (!mPosted) {
+				mPosted = true;
+				Choreographer.getInstance().postFrameCallback(this);
+			}
+		}
+
+		void cancel() {
+			if (mPosted) {
+				mPosted = false;
+				Choreographer.getInstance().removeFrameCallback(this);
+			}
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			mPosted = false;
+			computeScrollHelper(frameTimeNanos);
+		}
 	}
 
 	public View getCurrentChild() {
-		return getChildAt(getCurrentPage()) == null ? null
-				: getChildAt(getCurrentPage());
+		return getPageView(getCurrentPage());
 	}
 
 	@Override
@@ -539,12 +1003,16 @@ public class PagedView extends ViewGroup implements
 		case MotionEvent.ACTION_DOWN:
 			if (!mScroller.isFinished()) {
 				mScroller.abortAnimation();
-				System.out.println("set current page: " + mNextPage);
+				mLogger.onSnapInterrupted(mCurrentPage, mNextPage);
 				setCurrPage(mNextPage);
+				if (mTouchState != TOUCH_STATE_SCROLLING)
+					setScrollState(SCROLL_STATE_IDLE);
 			}
 			// Remember where the motion event started
 			mDownMotionX = mLastMotionX = ev.getX();
 			mDownMotionY = mLastMotionY = ev.getY();
+			mLastMotionTime = ev.getEventTime();
+			mDragRemainder = mDragLag = 0;
 			// mLastMotionXRemainder = mLastMotionYRemainder = 0;
 			mTotalMotionX = mTotalMotionY = 0;
 			mActivePointerId = ev.getPointerId(0);
@@ -560,7 +1028,12 @@ public class PagedView extends ViewGroup implements
 			break;
 
 		case MotionEvent.ACTION_UP:
+			if (mTouchState == TOUCH_STATE_SCROLLING)
+				flushDragLag();
 			handleTouchUp(ev);
+			// A release that started no snap leaves the pages where they are
+			if (mScrollState == SCROLL_STATE_DRAGGING)
+				setScrollState(SCROLL_STATE_IDLE);
 			mTouchState = TOUCH_STATE_REST;
 			mActivePointerId = INVALID_POINTER;
 			mScrolling = false;
@@ -569,8 +1042,11 @@ public class PagedView extends ViewGroup implements
 
 		case MotionEvent.ACTION_CANCEL:
 			if (mTouchState == TOUCH_STATE_SCROLLING) {
+				flushDragLag();
 				snapToDestination();
 			}
+			if (mScrollState == SCROLL_STATE_DRAGGING)
+				setScrollState(SCROLL_STATE_IDLE);
 			mTouchState = TOUCH_STATE_REST;
 			mActivePointerId = INVALID_POINTER;
 			mScrolling = false;
@@ -591,115 +1067,135 @@ public class PagedView extends ViewGroup implements
 			if (pointerIndex == INVALID_POINTER)
 				return;
 
-			if (mHorizontalMode) {
-				final float x = ev.getX(pointerIndex);
-				float deltaX = mLastMotionX - x;
-				mTotalMotionX += Math.abs(deltaX);
-
-				// Only scroll and update mLastMotionX if we have moved some
-				// discrete amount. We
-				// keep the remainder because we are actually testing if we've
-				// moved from the last
-				// scrolled position (which is discrete).
-				if (Math.abs(deltaX) >= 1.0f) {
-					if (deltaX > 30)
-						deltaX = 30f;
-					else if (deltaX < -30) {
-						deltaX = -30f;
-					}
-					scrollBy((int) deltaX, 0);
-
-					// if (isAllowCirculate()) {
-					// scrollBy((int) deltaX, 0);
-					// } else {
-					// if (deltaX < 0) {
-					// if (getScrollX() > 0) {
-					// scrollBy(Math.max(-getScrollX(), (int) deltaX),
-					// 0);
-					// }
-					// } else if (deltaX > 0) {
-					// int availableToScroll = 0;
-					// if (null != getChildAt(getChildCount() - 1)) {
-					// availableToScroll = getChildAt(
-					// getChildCount() - 1).getRight()
-					// - getScrollX() - getWidth();
-					// } else {
-					// availableToScroll = (getPageCount() - 1)
-					// * getWidth() - getScrollX()
-					// - getWidth();
-					// }
-					// if (availableToScroll > 0) {
-					// scrollBy(Math.min(availableToScroll,
-					// (int) deltaX), 0);
-					// }
-					// }
-					// }
-
-					mTouchX += deltaX;
-					mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
-					mLastMotionX = x;
-				} else {
-					awakenScrollBars();
+			// Walk the batched samples as well, so the travelled distance and
+			// the drag smoothing see every sample, not just the latest one
+			float scroll = 0;
+			final int historySize = ev.getHistorySize();
+			for (int h = 0; h < historySize; h++) {
+				scroll += trackDragSample(mHorizontalMode ? ev.getHistoricalX(
+						pointerIndex, h) : ev.getHistoricalY(pointerIndex, h),
+						ev.getHistoricalEventTime(h));
+			}
+			scroll += trackDragSample(mHorizontalMode ? ev.getX(pointerIndex)
+					: ev.getY(pointerIndex), ev.getEventTime());
+
+			// Only scroll by whole pixels and carry the remainder, because we
+			// are actually testing if we've moved from the last scrolled
+			// position (which is discrete)
+			scroll += mDragRemainder;
+			final int discreteScroll = (int) scroll;
+			mDragRemainder = scroll - discreteScroll;
+			if (discreteScroll != 0) {
+				if (mFrameMetrics != null) {
+					// The frame is needed from the first sample of the batch,
+					// event times share the base of System.nanoTime()
+					mFrameMetrics.onFrameRequested((historySize > 0 ? ev
+							.getHistoricalEventTime(0) : ev.getEventTime())
+							* NANOS_PER_MILLI);
 				}
+				warmUpPageInDirection(discreteScroll > 0);
+				dragBy(discreteScroll);
 			} else {
-				final float y = ev.getY(pointerIndex);
-				final float deltaY = mLastMotionY - y;
-
-				mTotalMotionY += Math.abs(deltaY);
-
-				if (Math.abs(deltaY) >= 1.0f) {
-					scrollBy(0, (int) deltaY);
-					// if (isAllowCirculate()) {
-					// scrollBy(0, (int) deltaY);
-					// } else {
-					// if (deltaY < 0) {
-					// if (getScrollY() > 0) {
-					// scrollBy(0,
-					// Math.max(-getScrollY(), (int) deltaY));
-					// }
-					// } else if (deltaY > 0) {
-					// int availableToScroll = 0;
-					// if (null != getChildAt(getChildCount() - 1)) {
-					// availableToScroll = getChildAt(
-					// getChildCount() - 1).getBottom()
-					// - getScrollY() - getHeight();
-					// } else {
-					// availableToScroll = (getPageCount() - 1)
-					// * getHeight() - getScrollY()
-					// - getHeight();
-					// }
-					// if (availableToScroll > 0) {
-					// scrollBy(0, Math.min(availableToScroll,
-					// (int) deltaY));
-					// }
-					// }
-					// }
-
-					mTouchY += deltaY;
-					mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
-					mLastMotionY = y;
-				} else {
-					awakenScrollBars();
-				}
+				awakenScrollBars();
+			}
+			if (mDragLag != 0 && !mFlushDragLagPosted) {
+				mFlushDragLagPosted = true;
+				postDelayed(mFlushDragLag, DRAG_STOP_MILLIS);
 			}
 		} else {
 			determineScrollingStart(ev);
 		}
 	}
 
+	private void dragBy(int discreteScroll) {
+		if (mHorizontalMode) {
+			scrollBy(discreteScroll, 0);
+			mTouchX += discreteScroll;
+		} else {
+			scrollBy(0, discreteScroll);
+			mTouchY += discreteScroll;
+		}
+		mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
+	}
+
+	/**
+	 * Scrolls by the distance drag smoothing still holds back, so the page is
+	 * under the pointer again. Called when the drag stops or ends, before the
+	 * snap target is computed.
+	 */
+	protected void flushDragLag() {
+		cancelDragLagFlush();
+		final int discreteScroll = Math.round(mDragLag + mDragRemainder);
+		mDragLag = mDragRemainder = 0;
+		if (discreteScroll != 0)
+			dragBy(discreteScroll);
+	}
+
+	private void cancelDragLagFlush() {
+		if (mFlushDragLagPosted) {
+			mFlushDragLagPosted = false;
+			removeCallbacks(mFlushDragLag);
+		}
+	}
+
+	/**
+	 * Moves the tracked pointer to a new sample along the paging axis.
+	 * 
+	 * @return how far to scroll for this sample, limited by
+	 *         {@link #mMaxDragVelocity} if drag smoothing is on
+	 */
+	protected float trackDragSample(float position, long eventTime) {
+		float delta;
+		if (mHorizontalMode) {
+			delta = mLastMotionX - position;
+			mTotalMotionX += Math.abs(delta);
+			mLastMotionX = position;
+		} else {
+			delta = mLastMotionY - position;
+			mTotalMotionY += Math.abs(delta);
+			mLastMotionY = position;
+		}
+
+		final long elapsed = eventTime - mLastMotionTime;
+		mLastMotionTime = eventTime;
+		if (mMaxDragVelocity <= 0)
+			return delta;
+
+		// The page may lag behind the pointer by mDragLag, it catches up
+		// at no more than mMaxDragVelocity
+		final float wanted = mDragLag + delta;
+		final float maxStep = mMaxDragVelocity * Math.max(1, elapsed) / 1000f;
+		final float step = Math.max(-maxStep, Math.min(maxStep, wanted));
+		mDragLag = wanted - step;
+		return step;
+	}
+
+	/**
+	 * Limit how fast a page follows a drag, in pixels per second, to smooth
+	 * out noisy input. The page catches up with the pointer instead of losing
+	 * the distance. 0 turns smoothing off, which is the default.
+	 */
+	public void setMaxDragVelocity(float pixelsPerSecond) {
+		mMaxDragVelocity = Math.max(0, pixelsPerSecond);
+		mDragLag = 0;
+	}
+
+	public float getMaxDragVelocity() {
+		return mMaxDragVelocity;
+	}
+
 	protected void handleTouchUp(MotionEvent ev) {
 		if (mTouchState == TOUCH_STATE_SCROLLING) {
 			final int activePointerId = mActivePointerId;
 			final int pointerIndex = ev.findPointerIndex(activePointerId);
 			if (pointerIndex == INVALID_POINTER)
 				return;
-			final VelocityTracker velocityTracker = mVelocityTracker;
+			final PageVelocityTracker velocityTracker = mVelocityTracker;
 			velocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
 
 			if (mHorizontalMode) {
 				final float x = ev.getX(pointerIndex);
-				final int velocityX = (int) velocityTracker
-						.getXVelocity(activePointerId);
+				final int velocityX = (int) velocityTracker.getXVelocity();
 				final int deltaX = (int) (x - mDownMotionX);
 				final int pageWidth = getScaledMeasuredWidth(getPageAt(mCurrentPage) == null ? this
 						: getPageAt(mCurrentPage));
@@ -709,6 +1205,7 @@ public class PagedView extends ViewGroup implements
 
 				boolean isFling = mTotalMotionX > MIN_LENGTH_FOR_FLING
 						&& Math.abs(velocityX) > mFlingThresholdVelocity;
+				mLogger.onTouchRelease(mCurrentPage, velocityX, isFling);
 
 				// In the case that the page is moved far to one direction
 				// and
@@ -741,23 +1238,22 @@ public class PagedView extends ViewGroup implements
 						&& mCurrentPage >= 0) {
 					finalPage = returnToOriginalPage ? mCurrentPage
 							: mCurrentPage - 1;
+					if (isFling && !returnToOriginalPage)
+						finalPage = getFlingTargetPage(finalPage, velocityX);
 					snapToPageWithVelocity(finalPage, velocityX);
-					System.out.println("snap to page: " + finalPage);
-					// snapToPage(finalPage);
 				} else if (((isSignificantMove && deltaX < 0 && !isFling) || (isFling && velocityX < 0))
 						&& mCurrentPage <= getPageCount() - 1) {
 					finalPage = returnToOriginalPage ? mCurrentPage
 							: mCurrentPage + 1;
+					if (isFling && !returnToOriginalPage)
+						finalPage = getFlingTargetPage(finalPage, velocityX);
 					snapToPageWithVelocity(finalPage, velocityX);
-					System.out.println("snap to page1: " + finalPage);
-					// snapToPage(finalPage);
 				} else {
 					snapToDestination();
 				}
 			} else {
 				final float y = ev.getY(pointerIndex);
-				final int velocityY = (int) velocityTracker
-						.getYVelocity(activePointerId);
+				final int velocityY = (int) velocityTracker.getYVelocity();
 				final int deltaY = (int) (y - mDownMotionY);
 				final int pageHeight = getScaledMeasuredHeight(getPageAt(mCurrentPage) == null ? this
 						: getPageAt(mCurrentPage));
@@ -767,6 +1263,7 @@ public class PagedView extends ViewGroup implements
 
 				boolean isFling = mTotalMotionY > MIN_LENGTH_FOR_FLING
 						&& Math.abs(velocityY) > mFlingThresholdVelocity;
+				mLogger.onTouchRelease(mCurrentPage, velocityY, isFling);
 
 				// In the case that the page is moved far to one direction
 				// and
@@ -799,14 +1296,22 @@ public class PagedView extends ViewGroup implements
 						&& mCurrentPage >= 0) {
 					finalPage = returnToOriginalPage ? mCurrentPage
 							: mCurrentPage - 1;
-					// snapToPageWithVelocity(finalPage, velocityY);
-					snapToPage(finalPage);
+					if (isFling && !returnToOriginalPage)
+						finalPage = getFlingTargetPage(finalPage, velocityY);
+					if (Math.abs(finalPage - mCurrentPage) > 1)
+						snapToPageWithVelocity(finalPage, velocityY);
+					else
+						snapToPage(finalPage);
 				} else if (((isSignificantMove && deltaY < 0 && !isFling) || (isFling && velocityY < 0))
 						&& mCurrentPage <= getPageCount() - 1) {
 					finalPage = returnToOriginalPage ? mCurrentPage
 							: mCurrentPage + 1;
-					// snapToPageWithVelocity(finalPage, velocityY);
-					snapToPage(finalPage);
+					if (isFling && !returnToOriginalPage)
+						finalPage = getFlingTargetPage(finalPage, velocityY);
+					if (Math.abs(finalPage - mCurrentPage) > 1)
+						snapToPageWithVelocity(finalPage, velocityY);
+					else
+						snapToPage(finalPage);
 				} else {
 					snapToDestination();
 				}
@@ -882,6 +1387,8 @@ public class PagedView extends ViewGroup implements
 			mDownMotionY = y;
 			mLastMotionX = x;
 			mLastMotionY = y;
+			mLastMotionTime = ev.getEventTime();
+			mDragRemainder = mDragLag = 0;
 			mTotalMotionX = mTotalMotionY = 0;
 			mActivePointerId = ev.getPointerId(0);
 			mAllowLongPress = true;
@@ -898,11 +1405,11 @@ public class PagedView extends ViewGroup implements
 			if (finishedScrolling) {
 				mTouchState = TOUCH_STATE_REST;
 				mScroller.abortAnimation();
-				System.out.println("finishedScrolling");
 			} else {
-				System.out.println("not finishedScrolling");
 				mTouchState = TOUCH_STATE_SCROLLING;
+				setScrollState(SCROLL_STATE_DRAGGING);
 			}
+			mLogger.onTouchDown(mCurrentPage, !finishedScrolling);
 
 			// check if this can be the beginning of a tap on the side of the
 			// pages
@@ -929,8 +1436,9 @@ public class PagedView extends ViewGroup implements
 			mScrolling = false;
 			break;
 		case MotionEvent.ACTION_POINTER_UP:
+			// onSecondaryPointerUp() restarts the tracker if the active
+			// pointer changed, the gesture keeps feeding it
 			onSecondaryPointerUp(ev);
-			releaseVelocityTracker();
 			break;
 		}
 		/*
@@ -946,8 +1454,8 @@ public class PagedView extends ViewGroup implements
 		if (disallowIntercept) {
 			// We need to make sure to cancel our long press if
 			// a scrollable widget takes over touch events
-			final View currentPage = getChildAt(mCurrentPage) == null ? this
-					: getChildAt(mCurrentPage);
+			final View currentPage = getPageView(mCurrentPage) == null ? this
+					: getPageView(mCurrentPage);
 			currentPage.cancelLongPress();
 		}
 		super.requestDisallowInterceptTouchEvent(disallowIntercept);
@@ -968,9 +1476,11 @@ public class PagedView extends ViewGroup implements
 			mLastMotionX = mDownMotionX = ev.getX(newPointerIndex);
 			mLastMotionY = ev.getY(newPointerIndex);
 			mActivePointerId = ev.getPointerId(newPointerIndex);
-			if (mVelocityTracker != null) {
-				mVelocityTracker.clear();
-			}
+			mVelocityTracker.clear();
+			// The lag and the sample time belonged to the pointer that left
+			mLastMotionTime = ev.getEventTime();
+			mDragRemainder = mDragLag = 0;
+			cancelDragLagFlush();
 		}
 	}
 
@@ -1015,29 +1525,47 @@ public class PagedView extends ViewGroup implements
 	}
 
 	public int getChildWidthOffset(int index) {
-		int offset = getRelativeChildPaddingLeft(0);
-		for (int i = 0; i < index; ++i) {
-			offset += getScaledMeasuredWidth(getChildAt(i)) + mPageSpacing;
-		}
-		if (index < 0) {
-			for (int i = 0; i > index; --i) {
-				offset -= getScaledMeasuredWidth(getChildAt(0)) + mPageSpacing;
-			}
-		}
-		return offset;
+		return getPageOffsetIndex(true).getOffset(index);
 	}
 
 	public int getChildHeightOffset(int index) {
-		int offset = getRelativeChildPaddingTop(0);
-		for (int i = 0; i < index; ++i) {
-			offset += getScaledMeasuredHeight(getChildAt(i)) + mPageSpacing;
-		}
-		if (index < 0) {
-			for (int i = 0; i > index; --i) {
-				offset -= getScaledMeasuredHeight(getChildAt(0)) + mPageSpacing;
+		return getPageOffsetIndex(false).getOffset(index);
+	}
+
+	/**
+	 * @return the page at a position along the paging axis, in the scrolled
+	 *         content coordinates. May be negative or past the last page.
+	 */
+	public int getPageAtPosition(int position) {
+		return getPageOffsetIndex(mHorizontalMode).getPageAt(position);
+	}
+
+	protected PageOffsetIndex getPageOffsetIndex(boolean horizontal) {
+		final PageOffsetIndex index = horizontal ? mPageWidthOffsets
+				: mPageHeightOffsets;
+		if (!index.isValid()) {
+			final int pageCount = getPageCount();
+			index.begin(pageCount, horizontal ? getRelativeChildPaddingLeft(0)
+					: getRelativeChildPaddingTop(0), mPageSpacing);
+			for (int i = 0; i < pageCount; i++) {
+				final View page = getPageAt(i);
+				index.setPageSize(i, horizontal ? getScaledMeasuredWidth(page)
+						: getScaledMeasuredHeight(page));
 			}
+			final View firstPage = getPageAt(0);
+			index.end(horizontal ? getScaledMeasuredWidth(firstPage)
+					: getScaledMeasuredHeight(firstPage));
 		}
-		return offset;
+		return index;
+	}
+
+	/**
+	 * Drops the cached page offsets, call it whenever the size of a page may
+	 * have changed outside of a measure pass.
+	 */
+	public void invalidatePageOffsets() {
+		mPageWidthOffsets.invalidate();
+		mPageHeightOffsets.invalidate();
 	}
 
 	/**
@@ -1074,6 +1602,7 @@ public class PagedView extends ViewGroup implements
 	 */
 	public void setLayoutScale(float childrenScale) {
 		mLayoutScale = childrenScale;
+		invalidatePageOffsets();
 
 		// Trigger a full re-layout (never just call onLayout directly!)
 		int widthSpec = MeasureSpec.makeMeasureSpec(getMeasuredWidth(),
@@ -1091,7 +1620,10 @@ public class PagedView extends ViewGroup implements
 	}
 
 	public void setPageSpacing(int pageSpacing) {
+		if (mPageSpacing == pageSpacing)
+			return;
 		mPageSpacing = pageSpacing;
+		invalidatePageOffsets();
 	}
 
 	public int getPageSpacing() {
@@ -1099,15 +1631,66 @@ public class PagedView extends ViewGroup implements
 	}
 
 	public void snapToDestination() {
-		int destPage = getCurrentPage();
+		snapToPage(getPageInViewport());
+	}
+
+	/**
+	 * Starts moving the pages from outside of a touch on this view, e.g. from
+	 * a scrub on the indicator. Stops a running snap on its target page, the
+	 * pages then follow {@link #scrubTo(float)} until {@link #endScrub()}.
+	 */
+	public void beginScrub() {
+		if (mScrubbing || getPageCount() <= 0)
+			return;
+		if (!mScroller.isFinished()) {
+			mScroller.abortAnimation();
+			setCurrPage(mNextPage);
+			// Nothing must settle the pages back while they are scrubbed
+			mNextPage = INVALID_INDEX;
+		}
+		mScrubbing = true;
+		pageBeginMoving();
+		setScrollState(SCROLL_STATE_DRAGGING);
+	}
+
+	/**
+	 * Moves the viewport straight to a position between pages, without any
+	 * animation or page listener call.
+	 * 
+	 * @param position
+	 *            the page index, the fraction moves towards the next page
+	 */
+	public void scrubTo(float position) {
+		final int pageCount = getPageCount();
+		if (!mScrubbing || pageCount <= 0)
+			return;
+		position = Math.max(0, Math.min(pageCount - 1, position));
+		final int page = (int) position;
+		final int start = getPageStart(page);
+		final int scroll = start
+				- (mHorizontalMode ? getRelativeChildPaddingLeft(page)
+						: getRelativeChildPaddingTop(page))
+				+ Math.round((position - page) * (getPageStart(page + 1) - start));
 		if (mHorizontalMode) {
-			final int screenWidth = getWidth();
-			destPage = (getScrollX() + screenWidth / 2) / screenWidth;
-		} else {
-			final int screenHeight = getHeight();
-			destPage = (getScrollY() + screenHeight / 2) / screenHeight;
+			if (scroll != mUnboundedScrollX)
+				scrollTo(scroll, getScrollY());
+		} else if (scroll != mUnboundedScrollY) {
+			scrollTo(getScrollX(), scroll);
 		}
-		snapToPage(destPage);
+	}
+
+	/**
+	 * Ends a scrub and settles on the page closest to the viewport.
+	 */
+	public void endScrub() {
+		if (!mScrubbing)
+			return;
+		mScrubbing = false;
+		snapToDestination();
+	}
+
+	public boolean isScrubbing() {
+		return mScrubbing;
 	}
 
 	protected void snapToPageWithVelocity(int whichPage, int velocity) {
@@ -1145,6 +1728,8 @@ public class PagedView extends ViewGroup implements
 					/ (2 * halfScreenSize));
 			float distance = halfScreenSize + halfScreenSize
 					* distanceInfluenceForSnapDuration(distanceRatio);
+			// Snaps across several pages travel the extra pages at full weight
+			distance += Math.max(0, Math.abs(delta) - 2 * halfScreenSize);
 
 			velocity = Math.abs(velocity);
 			velocity = Math.max(mMinSnapVelocity, velocity);
@@ -1156,7 +1741,9 @@ public class PagedView extends ViewGroup implements
 			// derivative of the scroll
 			// interpolator at zero, ie. 5. We use 4 to make it a little slower.
 			duration = 4 * Math.round(1000 * Math.abs(distance / velocity));
-			duration = Math.min(duration, MAX_PAGE_SNAP_DURATION);
+			duration = Math.min(duration,
+					Math.abs(delta) > 2 * halfScreenSize ? MAX_MULTI_PAGE_SNAP_DURATION
+							: MAX_PAGE_SNAP_DURATION);
 		} else {
 			// whichPage = Math.max(0, Math.min(whichPage, getChildCount() -
 			// 1));
@@ -1189,6 +1776,8 @@ public class PagedView extends ViewGroup implements
 					/ (2 * halfScreenSize));
 			float distance = halfScreenSize + halfScreenSize
 					* distanceInfluenceForSnapDuration(distanceRatio);
+			// Snaps across several pages travel the extra pages at full weight
+			distance += Math.max(0, Math.abs(delta) - 2 * halfScreenSize);
 
 			velocity = Math.abs(velocity);
 			velocity = Math.max(mMinSnapVelocity, velocity);
@@ -1200,28 +1789,153 @@ public class PagedView extends ViewGroup implements
 			// derivative of the scroll
 			// interpolator at zero, ie. 5. We use 4 to make it a little slower.
 			duration = 4 * Math.round(1000 * Math.abs(distance / velocity));
-			duration = Math.min(duration, MAX_PAGE_SNAP_DURATION);
+			duration = Math.min(duration,
+					Math.abs(delta) > 2 * halfScreenSize ? MAX_MULTI_PAGE_SNAP_DURATION
+							: MAX_PAGE_SNAP_DURATION);
 		}
 		snapToPage(whichPage, delta, duration);
 	}
 
+	/**
+	 * Projects where a fling with the given velocity would come to rest and
+	 * returns the page nearest to that point, at least nextPage and at most
+	 * {@link #mMaxFlingPageSkip} pages away from the current page. Returns
+	 * nextPage unless multi page flings are enabled.
+	 */
+	protected int getFlingTargetPage(int nextPage, int velocity) {
+		final int pageCount = getPageCount();
+		if (!mMultiPageFling || mMaxFlingPageSkip <= 1 || pageCount <= 0
+				|| mFlingDeceleration <= 0)
+			return nextPage;
+
+		// A positive velocity moves the content towards the previous pages
+		final float distance = (float) velocity * velocity
+				/ (2 * mFlingDeceleration);
+		final int scroll = mHorizontalMode ? mUnboundedScrollX
+				: mUnboundedScrollY;
+		final int viewportSize = mHorizontalMode ? getMeasuredWidth()
+				: getMeasuredHeight();
+		int page = getPageAtPosition((int) (scroll + viewportSize / 2 - Math
+				.signum(velocity) * distance));
+
+		if (nextPage < mCurrentPage) {
+			page = Math.max(mCurrentPage - mMaxFlingPageSkip,
+					Math.min(page, nextPage));
+		} else if (nextPage > mCurrentPage) {
+			page = Math.min(mCurrentPage + mMaxFlingPageSkip,
+					Math.max(page, nextPage));
+		} else {
+			return nextPage;
+		}
+		if (isAllowCirculate()) {
+			return Math.max(-1, Math.min(pageCount, page));
+		}
+		return Math.max(0, Math.min(pageCount - 1, page));
+	}
+
+	/**
+	 * Let a fling skip several pages depending on its velocity, up to
+	 * maxPageSkip pages.
+	 */
+	public void setMultiPageFling(boolean enabled, int maxPageSkip) {
+		mMultiPageFling = enabled;
+		mMaxFlingPageSkip = Math.max(1, maxPageSkip);
+	}
+
+	public boolean isMultiPageFling() {
+		return mMultiPageFling;
+	}
+
+	public int getMaxFlingPageSkip() {
+		return mMaxFlingPageSkip;
+	}
+
 	public void snapToPage(int whichPage) {
 		snapToPage(whichPage, mSnapDuration);
 	}
 
 	protected void snapToPage(int whichPage, int duration) {
+		if (mTouchState == TOUCH_STATE_REST)
+			teleportNextTo(whichPage, mTeleportThreshold);
 		snapToPage(whichPage, 0, duration);
 	}
 
-	protected void snapToPage(int whichPage, int delta, int duration) {
-		final int childCount = getPageCount();
-		if (childCount == 0)
-			return;
+	/**
+	 * Snaps to a page the user picked directly, e.g. by tapping a page
+	 * indicator. A page more than {@link #JUMP_TELEPORT_THRESHOLD} pages away,
+	 * or the threshold of {@link #setTeleportThreshold(int)} if one is set, is
+	 * reached by jumping to the page next to it and settling from there.
+	 */
+	public void jumpToPage(int whichPage) {
+		if (mTouchState == TOUCH_STATE_REST)
+			teleportNextTo(whichPage,
+					mTeleportThreshold > 0 ? mTeleportThreshold
+							: JUMP_TELEPORT_THRESHOLD);
+		snapToPage(whichPage, 0, mSnapDuration);
+	}
 
+	/**
+	 * Moves the viewport straight next to a page more than threshold pages
+	 * away, keeping its offset within the page, so the following snap
+	 * animates across one page only instead of laying out and drawing every
+	 * page in between.
+	 */
+	protected void teleportNextTo(int whichPage, int threshold) {
+		final int pageCount = getPageCount();
+		if (threshold <= 0 || pageCount <= 0)
+			return;
 		if (!isAllowCirculate()) {
-			whichPage = Math.max(0, Math.min(getPageCount() - 1, whichPage));
+			whichPage = Math.max(0, Math.min(pageCount - 1, whichPage));
 		} else {
-			if (whichPage < 0) {
+			whichPage = Math.max(-1, Math.min(pageCount, whichPage));
+		}
+
+		final int from = getPageInViewport();
+		if (Math.abs(whichPage - from) <= threshold)
+			return;
+		final int landing = whichPage > from ? whichPage - 1 : whichPage + 1;
+		final int scroll = mHorizontalMode ? mUnboundedScrollX
+				: mUnboundedScrollY;
+		final int padding = mHorizontalMode ? getRelativeChildPaddingLeft(0)
+				: getRelativeChildPaddingTop(0);
+		final int offset = scroll - (getPageStart(from) - padding);
+		final int landingScroll = getPageStart(landing) - padding + offset;
+		if (!mScroller.isFinished())
+			mScroller.abortAnimation();
+		if (mHorizontalMode) {
+			scrollTo(landingScroll, getScrollY());
+		} else {
+			scrollTo(getScrollX(), landingScroll);
+		}
+		// The jump is not a scroll, the listeners pick up again with the
+		// first frame of the snap
+		mPageScrollPending = false;
+	}
+
+	/**
+	 * Snaps to pages more than the given number of pages away by jumping
+	 * next to them first and animating the last page only. The jump is a cut,
+	 * the settle from the page next to the target is the visible transition.
+	 * 0, the default, always animates across every page in between, except
+	 * for {@link #jumpToPage(int)}.
+	 */
+	public void setTeleportThreshold(int pages) {
+		mTeleportThreshold = Math.max(0, pages);
+	}
+
+	public int getTeleportThreshold() {
+		return mTeleportThreshold;
+	}
+
+	protected void snapToPage(int whichPage, int delta, int duration) {
+		final int childCount = getPageCount();
+		if (childCount == 0)
+			return;
+
+		if (!isAllowCirculate()) {
+			whichPage = Math.max(0, Math.min(getPageCount() - 1, whichPage));
+		} else {
+			if (whichPage < 0) {
 				whichPage = -1;
 			} else if (whichPage >= getPageCount()) {
 				whichPage = getPageCount();
@@ -1250,19 +1964,24 @@ public class PagedView extends ViewGroup implements
 		onScrollToPage(getCurrentPage(), scrollToPage);
 
 		mNextPage = whichPage;
+		if (mAdapter != null)
+			populatePages();
 
 		View focusedChild = getFocusedChild();
 		if (focusedChild != null && whichPage != mCurrentPage
-				&& focusedChild == getChildAt(mCurrentPage)) {
+				&& focusedChild == getPageView(mCurrentPage)) {
 			focusedChild.clearFocus();
 		}
 
 		pageBeginMoving();
+		requestPageWarmUp(whichPage);
 		awakenScrollBars(duration);
 		if (duration == 0) {
 			duration = Math.abs(delta);
 		}
 
+		mLogger.onSnapStarted(mCurrentPage, whichPage, delta, duration);
+		setScrollState(SCROLL_STATE_SETTLING);
 		if (!mScroller.isFinished())
 			mScroller.abortAnimation();
 		if (mHorizontalMode) {
@@ -1270,6 +1989,7 @@ public class PagedView extends ViewGroup implements
 		} else {
 			mScroller.startScroll(0, mUnboundedScrollY, 0, delta, duration);
 		}
+		requestScrollFrame();
 
 		// Load associated pages immediately if someone else is handling the
 		// scroll, otherwise defer
@@ -1278,13 +1998,66 @@ public class PagedView extends ViewGroup implements
 			loadAssociatedPages(mNextPage);
 		} else {
 			mDeferLoadAssociatedPagesUntilScrollCompletes = true;
+			// Drop the loads that are no longer on the way, the rest is loaded
+			// once the scroll settles
+			releasePageLoads(mNextPage, false);
 		}
 		invalidate();
 	}
 
 	@Override
 	protected void dispatchDraw(Canvas canvas) {
-		super.dispatchDraw(canvas);
+		if (mFrameMetrics != null && mFrameMetrics.isInSession()) {
+			final long start = System.nanoTime();
+			drawPages(canvas);
+			mFrameMetrics.onFrameDrawn(start, System.nanoTime(),
+					!mScroller.isFinished());
+		} else {
+			drawPages(canvas);
+		}
+	}
+
+	protected void drawPages(Canvas canvas) {
+		final int pageCount = getPageCount();
+		final int viewportSize = mHorizontalMode ? getWidth() : getHeight();
+		// Only ViewGroup draws the disappearing children and starts the layout
+		// animation, so let it draw while they run
+		if (pageCount <= 0 || viewportSize <= 0 || isLayoutAnimating()) {
+			mLayoutAnimationScheduled = false;
+			super.dispatchDraw(canvas);
+			computeCirculate(canvas);
+			return;
+		}
+
+		final boolean clip = !mNoClipToPadding
+				&& (getPaddingLeft() | getPaddingTop() | getPaddingRight()
+						| getPaddingBottom()) != 0;
+		int saveCount = 0;
+		if (clip) {
+			saveCount = canvas.save();
+			canvas.clipRect(getScrollX() + getPaddingLeft(), getScrollY()
+					+ getPaddingTop(), getScrollX() + getWidth()
+					- getPaddingRight(), getScrollY() + getHeight()
+					- getPaddingBottom());
+		}
+
+		// Only draw the pages that overlap the viewport instead of walking
+		// every child
+		getVisiblePages(mTempVisiblePagesRange);
+		final int first = mTempVisiblePagesRange[0];
+		final int last = mTempVisiblePagesRange[1];
+		final long drawingTime = getDrawingTime();
+		for (int i = Math.max(0, first); i <= Math.min(pageCount - 1, last); i++) {
+			final View page = getPageView(i);
+			if (page != null
+					&& (page.getVisibility() == View.VISIBLE || page
+							.getAnimation() != null)) {
+				drawPageChild(canvas, page, i, drawingTime);
+			}
+		}
+
+		if (clip)
+			canvas.restoreToCount(saveCount);
 
 		// if (mAllowCirculate) {
 		// canvas.save();
@@ -1301,28 +2074,209 @@ public class PagedView extends ViewGroup implements
 		computeCirculate(canvas);
 	}
 
-	protected void computeCirculate(Canvas canvas) {
+	// Both are first set from the super constructor, so they must not have an
+	// initializer. getClipToPadding() needs API 21.
+	private boolean mNoClipToPadding;
+	private boolean mLayoutAnimationScheduled;
+
+	@Override
+	public void setClipToPadding(boolean clipToPadding) {
+		super.setClipToPadding(clipToPadding);
+		mNoClipToPadding = !clipToPadding;
+	}
+
+	@Override
+	public void setLayoutAnimation(LayoutAnimationController controller) {
+		super.setLayoutAnimation(controller);
+		mLayoutAnimationScheduled = controller != null;
+	}
+
+	@Override
+	public void startLayoutAnimation() {
+		super.startLayoutAnimation();
+		mLayoutAnimationScheduled = getLayoutAnimation() != null;
+	}
+
+	@Override
+	public void scheduleLayoutAnimation() {
+		super.scheduleLayoutAnimation();
+		mLayoutAnimationScheduled = getLayoutAnimation() != null;
+	}
+
+	/**
+	 * @return true while a layout animation or a layout transition runs, or a
+	 *         layout animation is about to start
+	 */
+	@SuppressLint("NewApi")
+	protected boolean isLayoutAnimating() {
+		final LayoutAnimationController controller = getLayoutAnimation();
+		if (mLayoutAnimationScheduled
+				|| (controller != null && !controller.isDone()))
+			return true;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			final LayoutTransition transition = getLayoutTransition();
+			return transition != null && transition.isRunning();
+		}
+		return false;
+	}
+
+	protected final int[] mTempVisiblePagesRange = new int[2];
+
+	/**
+	 * Computes the first and last page that overlap the viewport. In circular
+	 * mode the range may include the wrap pages -1 and getPageCount().
+	 */
+	protected void getVisiblePages(int[] range) {
+		final int pageCount = getPageCount();
+		if (pageCount <= 0) {
+			range[0] = range[1] = INVALID_INDEX;
+			return;
+		}
+		final int minPage = isAllowCirculate() ? -1 : 0;
+		final int maxPage = isAllowCirculate() ? pageCount : pageCount - 1;
+		final int viewportStart = mHorizontalMode ? getScrollX() : getScrollY();
+		final int viewportEnd = viewportStart
+				+ (mHorizontalMode ? getWidth() : getHeight());
+
+		int first = Math.max(minPage, Math.min(maxPage, getPageInViewport()));
+		int last = first;
+		while (first > minPage && getPageEnd(first - 1) > viewportStart) {
+			first--;
+		}
+		while (last < maxPage && getPageStart(last + 1) < viewportEnd) {
+			last++;
+		}
+		range[0] = first;
+		range[1] = last;
+	}
+
+	protected final int[] mLastVisiblePagesRange = { INVALID_INDEX,
+			INVALID_INDEX };
+
+	/**
+	 * Updates the visible share of the pages in the viewport and of the pages
+	 * that were in it the last time, and tells the pages implementing
+	 * {@link PageVisibilityAware} about every change.
+	 */
+	protected void dispatchPageVisibility() {
+		final int pageCount = getPageCount();
+		final int viewportSize = mHorizontalMode ? getWidth() : getHeight();
+		if (pageCount <= 0 || viewportSize <= 0)
+			return;
+
+		final int lastFirst = mLastVisiblePagesRange[0];
+		final int lastLast = mLastVisiblePagesRange[1];
+		getVisiblePages(mLastVisiblePagesRange);
+		final int first = mLastVisiblePagesRange[0];
+		final int last = mLastVisiblePagesRange[1];
+		for (int i = first; i <= last; i++) {
+			updatePageVisibility(normalizePage(i, pageCount));
+		}
+		if (lastFirst == INVALID_INDEX)
+			return;
+		for (int i = lastFirst; i <= lastLast; i++) {
+			if (i < first || i > last)
+				updatePageVisibility(normalizePage(i, pageCount));
+		}
+	}
+
+	private void updatePageVisibility(int page) {
+		final View view = getPageView(page);
+		if (view == null
+				|| !(view.getLayoutParams() instanceof PageLayoutParams))
+			return;
+		final PageLayoutParams lp = (PageLayoutParams) view.getLayoutParams();
+		final float fraction = getPageVisibleFraction(page);
+		if (fraction == lp.visibleFraction)
+			return;
+		lp.visibleFraction = fraction;
+		if (view instanceof PageVisibilityAware) {
+			final PageVisibilityAware aware = (PageVisibilityAware) view;
+			if (fraction >= 1) {
+				aware.onPageVisible(page);
+			} else if (fraction > 0) {
+				aware.onPagePartiallyVisible(page, fraction);
+			} else {
+				aware.onPageHidden(page);
+			}
+		}
+	}
+
+	/**
+	 * @return the share of the page inside the viewport along the paging
+	 *         axis, from 0 to 1. In circular mode the wrap copies count too.
+	 */
+	public float getPageVisibleFraction(int page) {
+		float fraction = getVisibleFractionAt(page);
 		if (isAllowCirculate()) {
+			final int count = getPageCount();
+			fraction = Math.max(fraction, Math.max(
+					getVisibleFractionAt(page - count),
+					getVisibleFractionAt(page + count)));
+		}
+		return fraction;
+	}
+
+	private float getVisibleFractionAt(int position) {
+		final int start = getPageStart(position);
+		final int end = getPageEnd(position);
+		if (end <= start)
+			return 0;
+		final int viewportStart = mHorizontalMode ? getScrollX() : getScrollY();
+		final int viewportEnd = viewportStart
+				+ (mHorizontalMode ? getWidth() : getHeight());
+		final int overlap = Math.min(end, viewportEnd)
+				- Math.max(start, viewportStart);
+		return overlap <= 0 ? 0 : Math.min(1f, (float) overlap
+				/ (end - start));
+	}
+
+	protected int getPageStart(int page) {
+		return mHorizontalMode ? getChildWidthOffset(page)
+				: getChildHeightOffset(page);
+	}
+
+	protected int getPageEnd(int page) {
+		final int count = getPageCount();
+		final View view = getPageAt(count > 0 ? ((page % count) + count)
+				% count : 0);
+		return getPageStart(page)
+				+ (mHorizontalMode ? getScaledMeasuredWidth(view)
+						: getScaledMeasuredHeight(view));
+	}
+
+	/**
+	 * Draws the copies of the last page before the first page and of the
+	 * first page after the last page, each only when it overlaps the viewport.
+	 */
+	protected void computeCirculate(Canvas canvas) {
+		if (!isAllowCirculate())
+			return;
+
+		getVisiblePages(mTempVisiblePagesRange);
+		if (mTempVisiblePagesRange[0] < 0) {
 			canvas.save();
 
 			if (mHorizontalMode)
-				canvas.translate(
-						-(getWidth() + mPageSpacing) * getChildCount(), 0);
+				canvas.translate(-(getWidth() + mPageSpacing) * getPageCount(),
+						0);
 			else
 				canvas.translate(0, -(getHeight() + mPageSpacing)
-						* getChildCount());
+						* getPageCount());
 			drawPage(canvas, getPageCount() - 1);
 
 			canvas.restore();
+		}
 
+		if (mTempVisiblePagesRange[1] >= getPageCount()) {
 			canvas.save();
 
 			if (mHorizontalMode)
-				canvas.translate((getWidth() + mPageSpacing) * getChildCount(),
+				canvas.translate((getWidth() + mPageSpacing) * getPageCount(),
 						0);
 			else
 				canvas.translate(0, (getHeight() + mPageSpacing)
-						* getChildCount());
+						* getPageCount());
 			drawPage(canvas, 0);
 			canvas.restore();
 		}
@@ -1359,10 +2313,10 @@ public class PagedView extends ViewGroup implements
 	 */
 	public void scrollToBehind() {
 		if (mScroller.isFinished()) {
-			if (mCurrentPage < getChildCount() - 1)
+			if (mCurrentPage < getPageCount() - 1)
 				snapToPage(mCurrentPage + 1);
 		} else {
-			if (mNextPage < getChildCount() - 1)
+			if (mNextPage < getPageCount() - 1)
 				snapToPage(mNextPage + 1);
 		}
 	}
@@ -1421,19 +2375,25 @@ public class PagedView extends ViewGroup implements
 
 		if (mAllowCirculate) {
 			if (whichPage < 0) {
-				whichPage = getChildCount() - 1;
-			} else if (mNextPage > getChildCount() - 1) {
+				whichPage = getPageCount() - 1;
+			} else if (mNextPage > getPageCount() - 1) {
 				whichPage = 0;
 			}
 			mCurrentPage = whichPage;
 		} else {
 			mCurrentPage = Math.max(0, Math.min(whichPage, getPageCount() - 1));
 		}
+		if (mAdapter != null)
+			populatePages();
 		updateCurrentPageScroll();
+		loadAssociatedPages(mCurrentPage);
 		updateScrollingIndicator();
 		if (mPagedViewListener != null) {
 			mPagedViewListener.onSetToPage(-1, whichPage);
 		}
+		for (int i = mPagedViewListeners.size() - 1; i >= 0; i--) {
+			mPagedViewListeners.get(i).onSetToPage(-1, whichPage);
+		}
 		invalidate();
 	}
 
@@ -1483,6 +2443,258 @@ public class PagedView extends ViewGroup implements
 
 	public void setAllowCirculate(boolean allowCirculate) {
 		mAllowCirculate = allowCirculate;
+		updateWrapPageLayers();
+		invalidate();
+	}
+
+	// The pages we put on a layer because their wrap copy is about to show
+	protected View mFirstWrapLayerPage;
+	protected View mLastWrapLayerPage;
+	// The pages we put on a layer for the current page movement
+	protected final ArrayList<View> mMovingLayerPages = new ArrayList<View>();
+	protected int mPageLayerBudget = -1;
+	// What the moving pages left of the budget for the warm up page
+	protected long mPageLayerBudgetLeft;
+	// The page about to scroll in, its layer is built when the UI thread is
+	// idle
+	protected int mWarmUpPage = INVALID_INDEX;
+	protected View mWarmUpView;
+	private long mWarmUpBytes;
+	private boolean mWarmUpScheduled;
+	private final MessageQueue.IdleHandler mWarmUpHandler = new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			mWarmUpScheduled = false;
+			warmUpPage(mWarmUpPage);
+			return false;
+		}
+	};
+
+	/**
+	 * While the pages move within one page of either end in circular mode,
+	 * keeps the page whose wrap copy is shown there on a layer, so the copy
+	 * is composited from the layer instead of redrawing the whole page. The
+	 * layers are released once the pages rest.
+	 */
+	@SuppressLint("NewApi")
+	protected void updateWrapPageLayers() {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+			return;
+
+		View lastPage = null;
+		View firstPage = null;
+		final int pageCount = getPageCount();
+		if (isAllowCirculate() && mIsPageMoving && isHardwareAccelerated()) {
+			final int viewportPage = getPageInViewport();
+			if (viewportPage <= 0)
+				lastPage = getPageView(pageCount - 1);
+			if (viewportPage >= pageCount - 1)
+				firstPage = getPageView(0);
+		}
+		mLastWrapLayerPage = swapWrapPageLayer(mLastWrapLayerPage, lastPage);
+		mFirstWrapLayerPage = swapWrapPageLayer(mFirstWrapLayerPage, firstPage);
+	}
+
+	private View swapWrapPageLayer(View oldPage, View newPage) {
+		if (oldPage == newPage)
+			return newPage;
+		if (oldPage != null)
+			releasePageLayer(oldPage, LAYER_REASON_WRAP);
+		if (newPage != null && acquirePageLayer(newPage, LAYER_REASON_WRAP))
+			return newPage;
+		return null;
+	}
+
+	protected static final int LAYER_REASON_WRAP = 1;
+	protected static final int LAYER_REASON_MOVING = 1 << 1;
+	protected static final int LAYER_REASON_WARM_UP = 1 << 2;
+
+	/**
+	 * Puts a page on a hardware layer for the given reason. The layer stays
+	 * until every reason that acquired it released it. Pages that set a layer
+	 * of their own keep it.
+	 * 
+	 * @return true if the page is tracked, i.e. it has page layout params
+	 */
+	@SuppressLint("NewApi")
+	protected boolean acquirePageLayer(View page, int reason) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+				|| !(page.getLayoutParams() instanceof PageLayoutParams))
+			return false;
+		final PageLayoutParams lp = (PageLayoutParams) page.getLayoutParams();
+		if (lp.layerReasons == 0) {
+			lp.layerOwned = page.getLayerType() == View.LAYER_TYPE_NONE;
+			if (lp.layerOwned)
+				page.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+		}
+		lp.layerReasons |= reason;
+		return true;
+	}
+
+	@SuppressLint("NewApi")
+	protected void releasePageLayer(View page, int reason) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+				|| !(page.getLayoutParams() instanceof PageLayoutParams))
+			return;
+		final PageLayoutParams lp = (PageLayoutParams) page.getLayoutParams();
+		if ((lp.layerReasons & reason) == 0)
+			return;
+		lp.layerReasons &= ~reason;
+		if (lp.layerReasons == 0 && lp.layerOwned) {
+			lp.layerOwned = false;
+			page.setLayerType(View.LAYER_TYPE_NONE, null);
+		}
+	}
+
+	/**
+	 * Releases every layer reason of a page leaving the view.
+	 */
+	protected void releasePageLayers(View page) {
+		releasePageLayer(page, ~0);
+	}
+
+	/**
+	 * Sets the memory the pages put on a layer while they move may use, in
+	 * bytes, the warm up page included. A negative budget allows three
+	 * viewports, 0 disables the layers.
+	 */
+	public void setPageLayerBudget(int bytes) {
+		mPageLayerBudget = bytes;
+	}
+
+	public int getPageLayerBudget() {
+		return mPageLayerBudget;
+	}
+
+	/**
+	 * Puts the page in the viewport and the pages next to it on a layer, the
+	 * closest first, as long as they fit in the budget. Each page is then
+	 * rasterized once per gesture and only composited while it moves. Does
+	 * nothing in a software window, where a layer is an offscreen drawing
+	 * cache.
+	 */
+	@SuppressLint("NewApi")
+	protected void acquireMovingPageLayers() {
+		final int pageCount = getPageCount();
+		final int viewportWidth = getWidth();
+		final int viewportHeight = getHeight();
+		mPageLayerBudgetLeft = 0;
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+				|| !isHardwareAccelerated()
+				|| mPageLayerBudget == 0 || pageCount <= 0
+				|| viewportWidth <= 0 || viewportHeight <= 0)
+			return;
+
+		long budget = mPageLayerBudget > 0 ? mPageLayerBudget
+				: 3L * viewportWidth * viewportHeight * 4;
+		mPageLayerBudgetLeft = budget;
+		getVisiblePages(mTempVisiblePagesRange);
+		final int first = mTempVisiblePagesRange[0] - 1;
+		final int last = mTempVisiblePagesRange[1] + 1;
+		final int center = Math.max(first, Math.min(last,
+				getPageInViewport()));
+		for (int d = 0; center - d >= first || center + d <= last; d++) {
+			for (int side = 0; side < (d == 0 ? 1 : 2); side++) {
+				final int position = side == 0 ? center + d : center - d;
+				if (position < first || position > last)
+					continue;
+				if (!isAllowCirculate() && (position < 0 || position >= pageCount))
+					continue;
+				final View page = getPageView(normalizePage(position,
+						pageCount));
+				if (page == null || page.getVisibility() != View.VISIBLE
+						|| mMovingLayerPages.contains(page))
+					continue;
+				final long bytes = 4L * page.getWidth() * page.getHeight();
+				if (bytes > budget)
+					return;
+				if (acquirePageLayer(page, LAYER_REASON_MOVING)) {
+					budget -= bytes;
+					mPageLayerBudgetLeft = budget;
+					mMovingLayerPages.add(page);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the layer of the page that is about to scroll into view the next
+	 * time the UI thread is idle, so the frame that reveals it only has to
+	 * composite it. The layer is charged against what the moving pages left of
+	 * the budget.
+	 */
+	protected void requestPageWarmUp(int page) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+				|| mPageLayerBudget == 0 || page == mWarmUpPage)
+			return;
+		mWarmUpPage = page;
+		if (!mWarmUpScheduled) {
+			mWarmUpScheduled = true;
+			Looper.myQueue().addIdleHandler(mWarmUpHandler);
+		}
+	}
+
+	@SuppressLint("NewApi")
+	protected void warmUpPage(int page) {
+		final int pageCount = getPageCount();
+		View view = null;
+		if (page != INVALID_INDEX && pageCount > 0 && mIsPageMoving
+				&& (isAllowCirculate() || (page >= 0 && page < pageCount))) {
+			view = getPageView(normalizePage(page, pageCount));
+		}
+		if (view != mWarmUpView) {
+			releaseWarmUpView();
+			if (view == null || view.getVisibility() != View.VISIBLE
+					|| view.getWidth() <= 0 || view.getHeight() <= 0)
+				return;
+			// A page already on a moving layer costs nothing more
+			final long bytes = mMovingLayerPages.contains(view) ? 0 : 4L
+					* view.getWidth() * view.getHeight();
+			if (bytes > mPageLayerBudgetLeft
+					|| !acquirePageLayer(view, LAYER_REASON_WARM_UP))
+				return;
+			mPageLayerBudgetLeft -= bytes;
+			mWarmUpBytes = bytes;
+			mWarmUpView = view;
+		}
+		// buildLayer() throws unless the page is attached to a window
+		if (mWarmUpView != null && mWarmUpView.getWindowToken() != null)
+			mWarmUpView.buildLayer();
+	}
+
+	/**
+	 * Picks the page that comes into view next from the drag direction.
+	 * 
+	 * @param forward
+	 *            true if the pages scroll towards higher page indexes
+	 */
+	protected void warmUpPageInDirection(boolean forward) {
+		getVisiblePages(mTempVisiblePagesRange);
+		if (mTempVisiblePagesRange[0] == INVALID_INDEX)
+			return;
+		requestPageWarmUp(forward ? mTempVisiblePagesRange[1] + 1
+				: mTempVisiblePagesRange[0] - 1);
+	}
+
+	protected void releaseWarmUpPage() {
+		mWarmUpPage = INVALID_INDEX;
+		releaseWarmUpView();
+	}
+
+	private void releaseWarmUpView() {
+		if (mWarmUpView != null) {
+			releasePageLayer(mWarmUpView, LAYER_REASON_WARM_UP);
+			mWarmUpView = null;
+		}
+		mPageLayerBudgetLeft += mWarmUpBytes;
+		mWarmUpBytes = 0;
+	}
+
+	protected void releaseMovingPageLayers() {
+		for (int i = mMovingLayerPages.size() - 1; i >= 0; i--) {
+			releasePageLayer(mMovingLayerPages.get(i), LAYER_REASON_MOVING);
+		}
+		mMovingLayerPages.clear();
 	}
 
 	public boolean drawPage(Canvas canvas, int pageIndex) {
@@ -1501,10 +2713,12 @@ public class PagedView extends ViewGroup implements
 				else
 					canvas.translate(0, -eachHeightSlidingDistance
 							* getPageCount());
-				drawChild(canvas, getChildAt(getPageCount() + pageIndex),
-						getDrawingTime());
+				View page = getPageView(getPageCount() + pageIndex);
+				if (page != null)
+					drawPageChild(canvas, page, getPageCount() + pageIndex,
+							getDrawingTime());
 				canvas.restore();
-			} else if (pageIndex >= getChildCount()) {
+			} else if (pageIndex >= getPageCount()) {
 				canvas.save();
 				if (mHorizontalMode)
 					canvas.translate(eachWidthSlidingDistance * getPageCount(),
@@ -1512,19 +2726,21 @@ public class PagedView extends ViewGroup implements
 				else
 					canvas.translate(0, eachHeightSlidingDistance
 							* getPageCount());
-				drawChild(canvas, getChildAt(pageIndex - getChildCount()),
-						getDrawingTime());
+				View page = getPageView(pageIndex - getPageCount());
+				if (page != null)
+					drawPageChild(canvas, page, pageIndex - getPageCount(),
+							getDrawingTime());
 				canvas.restore();
 			} else {
-				if (getChildAt(pageIndex) != null)
-					return drawChild(canvas, getChildAt(pageIndex),
-							getDrawingTime());
+				if (getPageView(pageIndex) != null)
+					return drawPageChild(canvas, getPageView(pageIndex),
+							pageIndex, getDrawingTime());
 			}
 			return true;
 		} else {
-			if (getChildAt(pageIndex) != null)
-				return drawChild(canvas, getChildAt(pageIndex),
-						getDrawingTime());
+			if (getPageView(pageIndex) != null)
+				return drawPageChild(canvas, getPageView(pageIndex),
+						pageIndex, getDrawingTime());
 			else
 				return false;
 		}
@@ -1537,16 +2753,170 @@ public class PagedView extends ViewGroup implements
 		return result;
 	}
 
-	@Override
-	public boolean drawChild(Canvas canvas, View child, long drawingTime) {
-		return super.drawChild(canvas, child, drawingTime);
+	/**
+	 * Draws a page the caller already knows the index of, timed by the draw
+	 * profiler if it is enabled.
+	 */
+	protected boolean drawPageChild(Canvas canvas, View page, int pageIndex,
+			long drawingTime) {
+		if (mDrawProfiler == null)
+			return drawChild(canvas, page, drawingTime);
+
+		final long start = System.nanoTime();
+		final boolean result = drawChild(canvas, page, drawingTime);
+		mDrawProfiler.record(pageIndex, System.nanoTime() - start);
+		return result;
 	}
 
 	protected void loadAssociatedPages(int page) {
 		loadAssociatedPages(page, false);
 	}
 
+	/**
+	 * Loads the content of the pages between
+	 * {@link #getAssociatedLowerPageBound(int)} and
+	 * {@link #getAssociatedUpperPageBound(int)} on the preload executor,
+	 * nearest pages first, and cancels or unloads the pages outside of it.
+	 * 
+	 * @param immediateAndOnly
+	 *            load only the given page, synchronously
+	 */
 	protected void loadAssociatedPages(int page, boolean immediateAndOnly) {
+		final int count = getPageCount();
+		if (mPageContentLoader == null || count <= 0)
+			return;
+		page = normalizePage(page, count);
+
+		if (immediateAndOnly) {
+			final PageLoadTask<?> task = mPageLoads.get(page);
+			if (task == null || !task.mLoaded) {
+				if (task != null)
+					task.cancel();
+				final PageLoadTask<?> newTask = newPageLoadTask(
+						mPageContentLoader, page);
+				mPageLoads.put(page, newTask);
+				newTask.loadNow();
+			}
+			return;
+		}
+
+		releasePageLoads(page, true);
+
+		final int lower = getAssociatedLowerPageBound(page);
+		final int upper = getAssociatedUpperPageBound(page);
+		final int distance = Math.max(page - lower, upper - page);
+		for (int d = 0; d <= distance; d++) {
+			if (page + d <= upper)
+				startPageLoad(page + d, count);
+			if (d > 0 && page - d >= lower)
+				startPageLoad(page - d, count);
+		}
+	}
+
+	private void startPageLoad(int page, int count) {
+		if (isAllowCirculate()) {
+			page = normalizePage(page, count);
+		} else if (page < 0 || page >= count) {
+			return;
+		}
+		if (mPageLoads.get(page) != null)
+			return;
+
+		final PageLoadTask<?> task = newPageLoadTask(mPageContentLoader, page);
+		mPageLoads.put(page, task);
+		if (mPreloadExecutor == null)
+			mPreloadExecutor = getDefaultPreloadExecutor();
+		task.mFuture = mPreloadExecutor.submit(task);
+	}
+
+	/**
+	 * Cancels the pending loads outside the preload window of the given page,
+	 * and unloads the loaded pages outside of it if unloadLoaded is set.
+	 */
+	protected void releasePageLoads(int page, boolean unloadLoaded) {
+		final int count = getPageCount();
+		if (count <= 0)
+			return;
+		page = normalizePage(page, count);
+		final int lower = getAssociatedLowerPageBound(page);
+		final int upper = getAssociatedUpperPageBound(page);
+
+		for (int i = mPageLoads.size() - 1; i >= 0; i--) {
+			final int loadedPage = mPageLoads.keyAt(i);
+			final PageLoadTask<?> task = mPageLoads.valueAt(i);
+			if (loadedPage < count
+					&& isInAssociatedRange(loadedPage, lower, upper, count))
+				continue;
+			if (!task.mLoaded) {
+				task.cancel();
+				mPageLoads.removeAt(i);
+			} else if (unloadLoaded) {
+				mPageLoads.removeAt(i);
+				task.mLoader.onPageContentUnloaded(loadedPage);
+			}
+		}
+	}
+
+	private boolean isInAssociatedRange(int page, int lower, int upper,
+			int count) {
+		if (!isAllowCirculate())
+			return page >= lower && page <= upper;
+		return ((page - lower) % count + count) % count <= upper - lower;
+	}
+
+	/**
+	 * Cancels all pending loads and unloads all loaded pages, then reloads
+	 * the pages around the current page. Call it when the page content has
+	 * changed.
+	 */
+	public void reloadPageContent() {
+		cancelAllPageLoads(true);
+		loadAssociatedPages(mCurrentPage);
+	}
+
+	protected void cancelAllPageLoads(boolean unloadLoaded) {
+		for (int i = mPageLoads.size() - 1; i >= 0; i--) {
+			final PageLoadTask<?> task = mPageLoads.valueAt(i);
+			if (!task.mLoaded) {
+				task.cancel();
+				mPageLoads.removeAt(i);
+			} else if (unloadLoaded) {
+				final int page = mPageLoads.keyAt(i);
+				mPageLoads.removeAt(i);
+				task.mLoader.onPageContentUnloaded(page);
+			}
+		}
+	}
+
+	public void setPageContentLoader(PageContentLoader<?> loader) {
+		cancelAllPageLoads(true);
+		mPageContentLoader = loader;
+		loadAssociatedPages(mCurrentPage);
+	}
+
+	public PageContentLoader<?> getPageContentLoader() {
+		return mPageContentLoader;
+	}
+
+	/**
+	 * Set the executor the page content is loaded on. By default a single low
+	 * priority thread shared by all PagedViews is used.
+	 */
+	public void setPreloadExecutor(ExecutorService executor) {
+		mPreloadExecutor = executor;
+	}
+
+	/**
+	 * Set how many pages on each side of the current page get their content
+	 * loaded.
+	 */
+	public void setPreloadWindow(int window) {
+		mPreloadWindow = Math.max(0, window);
+		loadAssociatedPages(mCurrentPage);
+	}
+
+	public int getPreloadWindow() {
+		return mPreloadWindow;
 	}
 
 	protected static final int TEMP_PAGE_COUNT = 1;
@@ -1555,19 +2925,147 @@ public class PagedView extends ViewGroup implements
 		// final int count = getChildCount();
 		// return (page - TEMP_PAGE_COUNT + count) % count;
 		// return Math.max(0, page - TEMP_PAGE_COUNT);
-		return page - TEMP_PAGE_COUNT;
+		return page - mPreloadWindow;
 	}
 
 	protected int getAssociatedUpperPageBound(int page) {
 		// final int count = getChildCount();
 		// return (page + TEMP_PAGE_COUNT + count) % count;
 		// return Math.min(page + TEMP_PAGE_COUNT, count - 1);
-		return page + TEMP_PAGE_COUNT;
+		return page + mPreloadWindow;
+	}
+
+	protected static synchronized ExecutorService getDefaultPreloadExecutor() {
+		if (sDefaultPreloadExecutor == null) {
+			sDefaultPreloadExecutor = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "PagedView preload");
+							thread.setDaemon(true);
+							thread.setPriority(Thread.MIN_PRIORITY);
+							return thread;
+						}
+					});
+		}
+		return sDefaultPreloadExecutor;
+	}
+
+	private <T> PageLoadTask<T> newPageLoadTask(PageContentLoader<T> loader,
+			int page) {
+		return new PageLoadTask<T>(loader, page);
+	}
+
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		if (mFrameMetrics != null)
+			updateFrameMetricsRefreshRate();
+		// Resubmit the loads cancelled when we were detached
+		loadAssociatedPages(mCurrentPage);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		if (mScrollFrameDriver != null)
+			mScrollFrameDriver.cancel();
+		cancelDragLagFlush();
+		if (mFrameMetrics != null)
+			mFrameMetrics.cancelSession();
+		if (mWarmUpScheduled) {
+			mWarmUpScheduled = false;
+			Looper.myQueue().removeIdleHandler(mWarmUpHandler);
+		}
+		// Results are posted to the UI thread, which drops them once detached
+		cancelAllPageLoads(false);
+	}
+
+	/**
+	 * Loads one page on the preload executor and hands the result back on the
+	 * UI thread, unless it was cancelled or replaced in the meantime. A failed
+	 * load is reported to the logger and forgotten, so the next
+	 * {@link #loadAssociatedPages(int)} retries it.
+	 */
+	protected class PageLoadTask<T> implements Runnable {
+		final PageContentLoader<T> mLoader;
+		final int mPage;
+		Future<?> mFuture;
+		volatile boolean mCancelled;
+		boolean mLoaded;
+
+		PageLoadTask(PageContentLoader<T> loader, int page) {
+			mLoader = loader;
+			mPage = page;
+		}
+
+		@Override
+		public void run() {
+			if (mCancelled)
+				return;
+			final T content;
+			try {
+				content = mLoader.loadPageContent(mPage);
+			} catch (final RuntimeException e) {
+				// The executor would keep it in the future nobody reads
+				post(new Runnable() {
+					@Override
+					public void run() {
+						fail(e);
+					}
+				});
+				return;
+			}
+			if (mCancelled)
+				return;
+			post(new Runnable() {
+				@Override
+				public void run() {
+					deliver(content);
+				}
+			});
+		}
+
+		void loadNow() {
+			final T content;
+			try {
+				content = mLoader.loadPageContent(mPage);
+			} catch (RuntimeException e) {
+				fail(e);
+				return;
+			}
+			deliver(content);
+		}
+
+		void fail(RuntimeException error) {
+			if (mCancelled || mPageLoads.get(mPage) != this)
+				return;
+			mPageLoads.remove(mPage);
+			mLogger.onPageLoadFailed(mPage, error);
+		}
+
+		void deliver(T content) {
+			if (mCancelled || mPageLoads.get(mPage) != this)
+				return;
+			mLoaded = true;
+			mLoader.onPageContentLoaded(mPage, content);
+		}
+
+		void cancel() {
+			mCancelled = true;
+			if (mFuture != null)
+				mFuture.cancel(false);
+		}
 	}
 
 	protected void pageBeginMoving() {
 		if (!mIsPageMoving) {
 			mIsPageMoving = true;
+			if (mFrameMetrics != null)
+				mFrameMetrics.beginSession(System.nanoTime(),
+						mTouchState == TOUCH_STATE_SCROLLING);
+			acquireMovingPageLayers();
+			updateWrapPageLayers();
 			onPageBeginMoving();
 		}
 	}
@@ -1575,7 +3073,12 @@ public class PagedView extends ViewGroup implements
 	protected void pageEndMoving() {
 		if (mIsPageMoving) {
 			mIsPageMoving = false;
+			releaseMovingPageLayers();
+			releaseWarmUpPage();
+			updateWrapPageLayers();
 			onPageEndMoving();
+			if (mFrameMetrics != null)
+				mFrameMetrics.endSession(System.nanoTime());
 		}
 	}
 
@@ -1672,22 +3175,37 @@ public class PagedView extends ViewGroup implements
 		return f * f * f + 1.0f;
 	}
 
-	protected VelocityTracker mVelocityTracker;
+	// Tracks the active pointer for the whole life of the view, instead of
+	// obtaining and recycling a platform VelocityTracker per gesture. It used
+	// to be an android.view.VelocityTracker, subclasses reading it must move
+	// to addSample() and computeCurrentVelocity(int, float).
+	protected final PageVelocityTracker mVelocityTracker = new PageVelocityTracker();
 
-	protected VelocityTracker acquireVelocityTrackerAndAddMovement(
+	protected PageVelocityTracker acquireVelocityTrackerAndAddMovement(
 			MotionEvent ev) {
-		if (mVelocityTracker == null) {
-			mVelocityTracker = VelocityTracker.obtain();
+		int pointerIndex;
+		if ((ev.getAction() & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN) {
+			mVelocityTracker.clear();
+			pointerIndex = 0;
+		} else {
+			pointerIndex = ev.findPointerIndex(mActivePointerId);
+		}
+		if (pointerIndex < 0)
+			return mVelocityTracker;
+
+		final int historySize = ev.getHistorySize();
+		for (int h = 0; h < historySize; h++) {
+			mVelocityTracker.addSample(ev.getHistoricalX(pointerIndex, h),
+					ev.getHistoricalY(pointerIndex, h),
+					ev.getHistoricalEventTime(h));
 		}
-		mVelocityTracker.addMovement(ev);
+		mVelocityTracker.addSample(ev.getX(pointerIndex), ev.getY(pointerIndex),
+				ev.getEventTime());
 		return mVelocityTracker;
 	}
 
 	protected void releaseVelocityTracker() {
-		if (mVelocityTracker != null) {
-			mVelocityTracker.recycle();
-			mVelocityTracker = null;
-		}
+		mVelocityTracker.clear();
 	}
 
 	protected PagedViewIndicator mScrollIndicator;
@@ -1707,13 +3225,20 @@ public class PagedView extends ViewGroup implements
 	}
 
 	public PagedViewIndicator setIndicator(PagedViewIndicator pagedViewIndicator) {
+		if (mScrollIndicator != null)
+			removeOnPageScrollListener(mScrollIndicator);
 		mScrollIndicator = pagedViewIndicator;
+		addOnPageScrollListener(mScrollIndicator);
 		mScrollIndicator.setPagedView(this);
 		onPageCountChanged(getPageCount());
 		return pagedViewIndicator;
 	}
 
 	public void onPageCountChanged(int newCount) {
+		if (mBatchUpdateDepth > 0) {
+			mBatchPageCountChanged = true;
+			return;
+		}
 		if (mScrollIndicator != null) {
 			mScrollIndicator.onPageCountChanged(newCount);
 			updateScrollingIndicatorPosition();
@@ -1741,6 +3266,76 @@ public class PagedView extends ViewGroup implements
 		if (mPagedViewListener != null) {
 			mPagedViewListener.onScrollToPage(cur, dest);
 		}
+		for (int i = mPagedViewListeners.size() - 1; i >= 0; i--) {
+			mPagedViewListeners.get(i).onScrollToPage(cur, dest);
+		}
+	}
+
+	/**
+	 * Tells the scroll listeners where the viewport is, as the page at its
+	 * leading edge and the offset from that page towards the next one.
+	 */
+	protected void dispatchPageScrolled() {
+		final int pageCount = getPageCount();
+		final int viewportSize = mHorizontalMode ? getMeasuredWidth()
+				: getMeasuredHeight();
+		if (mPageScrollListeners.isEmpty() || pageCount <= 0
+				|| viewportSize <= 0)
+			return;
+
+		final PageOffsetIndex index = getPageOffsetIndex(mHorizontalMode);
+		final int padding = mHorizontalMode ? getRelativeChildPaddingLeft(0)
+				: getRelativeChildPaddingTop(0);
+		final int scroll = mHorizontalMode ? mUnboundedScrollX
+				: mUnboundedScrollY;
+		int position = index.getPageAt(scroll + padding);
+		int offsetPixels = scroll + padding - index.getOffset(position);
+		final int stride = index.getOffset(position + 1)
+				- index.getOffset(position);
+		float offset = stride > 0 ? (float) offsetPixels / stride : 0;
+
+		if (isAllowCirculate()) {
+			position = normalizePage(position, pageCount);
+		} else if (position < 0 || position >= pageCount - 1) {
+			// Over scrolled past either end
+			position = position < 0 ? 0 : pageCount - 1;
+			offsetPixels = 0;
+			offset = 0;
+		}
+
+		for (int i = mPageScrollListeners.size() - 1; i >= 0; i--) {
+			mPageScrollListeners.get(i).onPageScrolled(position, offset,
+					offsetPixels);
+		}
+	}
+
+	protected void setScrollState(int state) {
+		if (mScrollState == state)
+			return;
+		mScrollState = state;
+		for (int i = getChildCount() - 1; i >= 0; i--) {
+			final View child = getChildAt(i);
+			if (child instanceof ScrollStateAware)
+				((ScrollStateAware) child).onScrollStateChanged(state);
+		}
+		for (int i = mPageScrollListeners.size() - 1; i >= 0; i--) {
+			mPageScrollListeners.get(i).onPageScrollStateChanged(state);
+		}
+	}
+
+	/**
+	 * @return {@link #SCROLL_STATE_IDLE}, {@link #SCROLL_STATE_DRAGGING} or
+	 *         {@link #SCROLL_STATE_SETTLING}
+	 */
+	public int getScrollState() {
+		return mScrollState;
+	}
+
+	/**
+	 * @return true if the pages are neither dragged nor settling
+	 */
+	public boolean isScrollIdle() {
+		return mScrollState == SCROLL_STATE_IDLE;
 	}
 
 	protected void determineScrollingStart(MotionEvent ev) {
@@ -1779,8 +3374,11 @@ public class PagedView extends ViewGroup implements
 				if (mUsePagingTouchSlop ? xPaged : xMoved) {
 					// Scroll if the user moved far enough along the X axis
 					mTouchState = TOUCH_STATE_SCROLLING;
+					setScrollState(SCROLL_STATE_DRAGGING);
 					mTotalMotionX += Math.abs(mLastMotionX - x);
 					mLastMotionX = x;
+					mLastMotionTime = ev.getEventTime();
+					mDragRemainder = mDragLag = 0;
 					mTouchX = getScrollX();
 					mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
 					pageBeginMoving();
@@ -1793,8 +3391,11 @@ public class PagedView extends ViewGroup implements
 				if (mUsePagingTouchSlop ? yPaged : yMoved) {
 					// Scroll if the user moved far enough along the X axis
 					mTouchState = TOUCH_STATE_SCROLLING;
+					setScrollState(SCROLL_STATE_DRAGGING);
 					mTotalMotionY += Math.abs(mLastMotionY - y);
 					mLastMotionY = y;
+					mLastMotionTime = ev.getEventTime();
+					mDragRemainder = mDragLag = 0;
 					mTouchY = getScrollY();
 					mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
 					pageBeginMoving();
@@ -1811,7 +3412,7 @@ public class PagedView extends ViewGroup implements
 			// Try canceling the long press. It could also have been scheduled
 			// by a distant descendant, so use the mAllowLongPress flag to block
 			// everything
-			final View currentPage = getChildAt(mCurrentPage);
+			final View currentPage = getPageView(mCurrentPage);
 			if (currentPage != null) {
 				currentPage.cancelLongPress();
 			}
@@ -1819,15 +3420,265 @@ public class PagedView extends ViewGroup implements
 	}
 
 	public int getPageCount() {
+		if (mAdapter != null)
+			return mAdapter.getCount();
 		return getChildCount();
 	}
 
 	public View getPageAt(int position) {
-		View v = getChildAt(position);
+		View v = getPageView(position);
 		if (null == v) {
 			return getChildAt(0);
 		}
-		return getChildAt(position);
+		return v;
+	}
+
+	/**
+	 * @return the view of the page, or null if the page is not attached
+	 */
+	public View getPageView(int page) {
+		if (mAdapter != null)
+			return mAttachedPages.get(page);
+		return getChildAt(page);
+	}
+
+	/**
+	 * @return the page index of an attached page view, or INVALID_INDEX
+	 */
+	public int indexOfPage(View view) {
+		if (mAdapter != null) {
+			final int i = mAttachedPages.indexOfValue(view);
+			return i < 0 ? INVALID_INDEX : mAttachedPages.keyAt(i);
+		}
+		final int i = indexOfChild(view);
+		return i < 0 ? INVALID_INDEX : i;
+	}
+
+	/**
+	 * Sets the adapter that provides the pages. Pages added with
+	 * {@link #addView(View)} or from XML are removed, and no pages can be added
+	 * that way while an adapter is set.
+	 */
+	public void setAdapter(PagedAdapter adapter) {
+		if (mAdapter != null) {
+			mAdapter.unregisterDataSetObserver(mAdapterObserver);
+			recycleAllPages();
+			mRecycledPages.clear();
+		} else if (adapter != null && getChildCount() > 0) {
+			// They would be mistaken for attached adapter pages
+			removeAllViews();
+		}
+		mAdapter = adapter;
+		if (mAdapter != null) {
+			mAdapter.registerDataSetObserver(mAdapterObserver);
+		}
+		onAdapterDataChanged();
+	}
+
+	public PagedAdapter getAdapter() {
+		return mAdapter;
+	}
+
+	/**
+	 * Set how many pages on each side of the current page and of the snap
+	 * target stay attached when an adapter is used.
+	 */
+	public void setAttachedPageWindow(int window) {
+		mAttachedPageWindow = Math.max(1, window);
+		mPopulatedViewportPage = mPopulatedTargetPage = INVALID_INDEX;
+		if (mAdapter != null)
+			populatePages();
+	}
+
+	public int getAttachedPageWindow() {
+		return mAttachedPageWindow;
+	}
+
+	protected void onAdapterDataChanged() {
+		recycleAllPages();
+		invalidatePageOffsets();
+		mNextPage = INVALID_INDEX;
+		final int pageCount = getPageCount();
+		mCurrentPage = Math.max(0, Math.min(mCurrentPage, pageCount - 1));
+		if (mAdapter != null)
+			populatePages();
+		reloadPageContent();
+		onPageCountChanged(pageCount);
+		requestLayout();
+		invalidate();
+	}
+
+	/**
+	 * Attaches the pages around the page in the viewport and around the snap
+	 * target, and recycles every other attached page.
+	 */
+	protected void populatePages() {
+		final int count = getPageCount();
+		if (count <= 0) {
+			recycleAllPages();
+			return;
+		}
+
+		final int viewportPage = normalizePage(getPageInViewport(), count);
+		final int targetPage = normalizePage(
+				mNextPage != INVALID_INDEX ? mNextPage : mCurrentPage, count);
+		if (viewportPage == mPopulatedViewportPage
+				&& targetPage == mPopulatedTargetPage)
+			return;
+		mPopulatedViewportPage = viewportPage;
+		mPopulatedTargetPage = targetPage;
+
+		for (int i = mAttachedPages.size() - 1; i >= 0; i--) {
+			final int page = mAttachedPages.keyAt(i);
+			if (page >= count
+					|| (pageDistance(page, viewportPage, count) > mAttachedPageWindow && pageDistance(
+							page, targetPage, count) > mAttachedPageWindow)) {
+				final View view = mAttachedPages.valueAt(i);
+				mAttachedPages.removeAt(i);
+				recyclePage(view, page);
+			}
+		}
+
+		attachPagesAround(viewportPage, count);
+		if (targetPage != viewportPage)
+			attachPagesAround(targetPage, count);
+	}
+
+	private void attachPagesAround(int center, int count) {
+		for (int i = center - mAttachedPageWindow; i <= center
+				+ mAttachedPageWindow; i++) {
+			int page = i;
+			if (isAllowCirculate()) {
+				page = normalizePage(i, count);
+			} else if (page < 0 || page >= count) {
+				continue;
+			}
+			if (mAttachedPages.get(page) == null) {
+				attachPage(page);
+			}
+		}
+	}
+
+	// Set while attachPage() or recyclePage() adds or removes a child
+	private boolean mInAdapterUpdate;
+
+	protected void attachPage(int page) {
+		View view;
+		final int last = mRecycledPages.size() - 1;
+		if (last >= 0) {
+			view = mRecycledPages.remove(last);
+		} else {
+			view = mAdapter.createPage(this);
+		}
+		mAdapter.bindPage(view, page);
+
+		LayoutParams params = view.getLayoutParams();
+		if (params == null) {
+			params = generateDefaultLayoutParams();
+		}
+		mAttachedPages.put(page, view);
+		// Attach without a full measure and layout pass, which would also
+		// abort a running snap in updateCurrentPageScroll()
+		mInAdapterUpdate = true;
+		try {
+			addViewInLayout(view, -1, params, true);
+		} finally {
+			mInAdapterUpdate = false;
+		}
+		view.setDrawingCacheEnabled(false);
+		if (mLongClickListener != null) {
+			view.setOnLongClickListener(mLongClickListener);
+		}
+		if (mLastWidthMeasureSpec != 0 && mLastHeightMeasureSpec != 0) {
+			measurePage(view, mLastWidthMeasureSpec, mLastHeightMeasureSpec);
+			invalidatePageOffsetsIfResized(view, page);
+			layoutPage(view, page);
+		} else {
+			requestLayout();
+		}
+		invalidate();
+	}
+
+	/**
+	 * Drops the cached page offsets only if the attached page does not fit the
+	 * slot the index holds for it, so attaching a window of pages does not
+	 * rebuild the index once per page.
+	 */
+	protected void invalidatePageOffsetsIfResized(View view, int page) {
+		// The start of the index and the stride around it follow the first
+		// child and page 0
+		final boolean first = page == 0 || getChildCount() == 1;
+		invalidateIfResized(mPageWidthOffsets, first, page,
+				getScaledMeasuredWidth(view));
+		invalidateIfResized(mPageHeightOffsets, first, page,
+				getScaledMeasuredHeight(view));
+	}
+
+	private static void invalidateIfResized(PageOffsetIndex index,
+			boolean first, int page, int size) {
+		if (index.isValid()
+				&& (first || page >= index.getPageCount() || index
+						.getPageSize(page) != size))
+			index.invalidate();
+	}
+
+	protected void recyclePage(View view, int page) {
+		final LayoutParams params = view.getLayoutParams();
+		if (params instanceof PageLayoutParams) {
+			final PageLayoutParams lp = (PageLayoutParams) params;
+			if (lp.visibleFraction > 0 && view instanceof PageVisibilityAware)
+				((PageVisibilityAware) view).onPageHidden(page);
+			lp.visibleFraction = 0;
+		}
+		// A detached page takes the size of the viewport in the offsets
+		final boolean first = page == 0 || getChildAt(0) == view;
+		invalidateIfResized(mPageWidthOffsets, first, page, getMeasuredWidth());
+		invalidateIfResized(mPageHeightOffsets, first, page,
+				getMeasuredHeight());
+		mInAdapterUpdate = true;
+		try {
+			removeViewInLayout(view);
+		} finally {
+			mInAdapterUpdate = false;
+		}
+		mAdapter.recyclePage(view, page);
+		mRecycledPages.add(view);
+		invalidate();
+	}
+
+	protected void recycleAllPages() {
+		for (int i = mAttachedPages.size() - 1; i >= 0; i--) {
+			final View view = mAttachedPages.valueAt(i);
+			final int page = mAttachedPages.keyAt(i);
+			mAttachedPages.removeAt(i);
+			recyclePage(view, page);
+		}
+		mPopulatedViewportPage = mPopulatedTargetPage = INVALID_INDEX;
+	}
+
+	/**
+	 * @return the page nearest to the current scroll position, may be out of
+	 *         range in circular mode
+	 */
+	protected int getPageInViewport() {
+		final int viewportSize = mHorizontalMode ? getMeasuredWidth()
+				: getMeasuredHeight();
+		if (viewportSize <= 0 || getPageCount() <= 0)
+			return mCurrentPage;
+		final int scroll = mHorizontalMode ? mUnboundedScrollX
+				: mUnboundedScrollY;
+		return getPageAtPosition(scroll + viewportSize / 2);
+	}
+
+	private int normalizePage(int page, int count) {
+		if (isAllowCirculate())
+			return ((page % count) + count) % count;
+		return Math.max(0, Math.min(page, count - 1));
+	}
+
+	private int pageDistance(int a, int b, int count) {
+		final int d = Math.abs(a - b);
+		return isAllowCirculate() ? Math.min(d, count - d) : d;
 	}
 
 	public int getScaledMeasuredWidth(int pageIndex) {
@@ -1862,6 +3713,97 @@ public class PagedView extends ViewGroup implements
 		return mPagedViewListener;
 	}
 
+	/**
+	 * Adds a listener next to the one set with
+	 * {@link #setPagedViewListener(PagedViewListener)}.
+	 */
+	public void addPagedViewListener(PagedViewListener listener) {
+		if (listener != null && !mPagedViewListeners.contains(listener))
+			mPagedViewListeners.add(listener);
+	}
+
+	public void removePagedViewListener(PagedViewListener listener) {
+		mPagedViewListeners.remove(listener);
+	}
+
+	public void addOnPageScrollListener(OnPageScrollListener listener) {
+		if (listener != null && !mPageScrollListeners.contains(listener))
+			mPageScrollListeners.add(listener);
+	}
+
+	public void removeOnPageScrollListener(OnPageScrollListener listener) {
+		mPageScrollListeners.remove(listener);
+	}
+
+	/**
+	 * Sets the receiver of the diagnostic events, null restores the default
+	 * logger that ignores them.
+	 */
+	public void setLogger(PagedViewLogger logger) {
+		mLogger = logger == null ? PagedViewLogger.NONE : logger;
+	}
+
+	public PagedViewLogger getLogger() {
+		return mLogger;
+	}
+
+	@SuppressLint("NewApi")
+	private void updateFrameMetricsRefreshRate() {
+		// Before API 17 or while detached the default of 60 fps is kept
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+				&& getDisplay() != null) {
+			mFrameMetrics.setRefreshRate(getDisplay().getRefreshRate());
+		}
+	}
+
+	/**
+	 * Records the frame timing of every drag and snap, see
+	 * {@link PageFrameMetrics}. Off by default.
+	 */
+	public void setFrameMetricsEnabled(boolean enabled) {
+		if (enabled == (mFrameMetrics != null))
+			return;
+		if (enabled) {
+			mFrameMetrics = new PageFrameMetrics();
+			updateFrameMetricsRefreshRate();
+		} else {
+			mFrameMetrics = null;
+		}
+	}
+
+	public boolean isFrameMetricsEnabled() {
+		return mFrameMetrics != null;
+	}
+
+	/**
+	 * @return the frame metrics, or null if they are not enabled
+	 */
+	public PageFrameMetrics getFrameMetrics() {
+		return mFrameMetrics;
+	}
+
+	/**
+	 * Times the draw of every page, see {@link PageDrawProfiler}. Off by
+	 * default, disabling it drops the collected stats. Pages drawn by
+	 * ViewGroup during a layout animation are not timed.
+	 */
+	public void setDrawProfilingEnabled(boolean enabled) {
+		if (enabled == (mDrawProfiler != null))
+			return;
+		mDrawProfiler = enabled ? new PageDrawProfiler() : null;
+	}
+
+	public boolean isDrawProfilingEnabled() {
+		return mDrawProfiler != null;
+	}
+
+	/**
+	 * @return the draw profiler, or null if profiling is not enabled
+	 */
+	public PageDrawProfiler getDrawProfiler() {
+		return mDrawProfiler;
+	}
+
 	private static class ScrollInterpolator implements Interpolator {
 		public ScrollInterpolator() {
 		}
@@ -4,12 +4,14 @@ import com.doodleapp.pagedview.R;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.animation.Animation;
 import android.view.animation.Animation.AnimationListener;
 import android.view.animation.AnimationUtils;
@@ -20,7 +22,7 @@ import android.view.animation.AnimationUtils;
  *
  */
 public class PagedViewIndicator extends View implements PagedViewListener,
-		AnimationListener {
+		OnPageScrollListener, AnimationListener {
 	private static final int INVALID_INDEX = -1;
 
 	Animation indicatorFadeOut;
@@ -43,6 +45,36 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 	protected int mIndicatorHeight = -1;
 	protected int mIndicatorPadding = 0;
 
+	// Dot geometry, recomputed by updateGeometry() when invalid
+	private boolean mGeometryValid;
+	private int mDotWidth;
+	private int mDotPadding;
+	private int mDotStride;
+	private int mDotsLeft;
+	private int mDotsTop;
+
+	// Last scroll progress reported by the paged view
+	private int mScrollPosition = INVALID_INDEX;
+	private float mScrollOffset;
+	private int mActiveDot;
+
+	// The row of normal dots, drawn once and rebuilt with the geometry
+	private Bitmap mDotsCache;
+	private boolean mDotsCacheValid;
+
+	// Windowed mode: at most this many dots around the active page, 0 shows
+	// every dot
+	protected int mMaxVisibleDots = 0;
+	private boolean mWindowed;
+	// Index of the dot in the first slot of the window, fractional while the
+	// window slides
+	private float mWindowStart;
+
+	protected boolean mScrubEnabled = false;
+	private boolean mScrubbing;
+	private int mDownX;
+	private final int mTouchSlop;
+
 	public PagedViewIndicator(Context context) {
 		this(context, null);
 	}
@@ -65,6 +97,8 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 				.getDrawable(R.styleable.PagedViewIndicator_indicator_active_bg);
 		mIndicatorPressed = a
 				.getDrawable(R.styleable.PagedViewIndicator_indicator_pressed_bg);
+		mMaxVisibleDots = Math.max(0, a.getInteger(
+				R.styleable.PagedViewIndicator_indicator_max_visible_dots, 0));
 
 		if (mIndicatorWidth == -1 && null != mIndicatorNormal) {
 			mIndicatorWidth = mIndicatorNormal.getIntrinsicWidth();
@@ -76,6 +110,7 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 		a.recycle();
 
 		mPaint = new Paint();
+		mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
 	}
 
 	public void setPagedView(PagedView pagedView) {
@@ -108,146 +143,317 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 	}
 
 	@Override
-	protected void onDraw(Canvas canvas) {
-		super.onDraw(canvas);
-		if (mPageCount <= 1 || mIndicatorNormal == null
-				|| mIndicatorActive == null || mIndicatorPressed == null) {
-			return;
-		}
-		int width = getWidth();
-		int totalWidth = mPageCount * mIndicatorWidth + (mPageCount - 1)
+	protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+		super.onSizeChanged(w, h, oldw, oldh);
+		mGeometryValid = false;
+	}
+
+	/**
+	 * Computes the size and position of the dots, only after the size, the
+	 * page count or the dot drawable changed.
+	 */
+	private void updateGeometry() {
+		mGeometryValid = true;
+		mWindowed = mMaxVisibleDots > 0 && mPageCount > mMaxVisibleDots;
+		final int dotCount = mWindowed ? mMaxVisibleDots : mPageCount;
+		final int width = getWidth();
+		int totalWidth = dotCount * mIndicatorWidth + (dotCount - 1)
 				* mIndicatorPadding;
-		int height = getHeight();
-		int totalHeight = mIndicatorHeight;
-		float scaleX = (float) width / (float) totalWidth;
+		final float scaleX = totalWidth > 0 ? (float) width / totalWidth : 1;
 
-		int indicatorWidth = mIndicatorWidth;
-		int indicatorPadding = mIndicatorPadding;
+		mDotWidth = mIndicatorWidth;
+		mDotPadding = mIndicatorPadding;
 		if (scaleX < 1) {
-			indicatorWidth = (int) (mIndicatorWidth * scaleX);
-			indicatorPadding = (int) (mIndicatorPadding * scaleX);
-			totalWidth = mPageCount * indicatorWidth + (mPageCount - 1)
-					* indicatorPadding;
+			mDotWidth = (int) (mIndicatorWidth * scaleX);
+			mDotPadding = (int) (mIndicatorPadding * scaleX);
+			totalWidth = dotCount * mDotWidth + (dotCount - 1) * mDotPadding;
 		}
+		mDotStride = mDotWidth + mDotPadding;
+		mDotsLeft = (width - totalWidth) / 2;
+		mDotsTop = (getHeight() - mIndicatorHeight) / 2;
+		mWindowStart = getWindowStart();
+		mDotsCacheValid = false;
+		if (mWindowed)
+			releaseDotsCache();
+	}
 
-		int startX = (width - totalWidth) / 2;
-		int startY = (height - totalHeight) / 2;
-		int endX = startX + indicatorWidth;
-		int endY = startY + mIndicatorHeight;
+	/**
+	 * @return the first slot of the window, centred on the scroll position
+	 *         and kept inside the dots
+	 */
+	private float getWindowStart() {
+		if (!mWindowed)
+			return 0;
+		final float position = mScrollPosition == INVALID_INDEX ? mActivePageIndex
+				: mScrollPosition + mScrollOffset;
+		final float start = position - (mMaxVisibleDots - 1) / 2f;
+		return Math.max(0, Math.min(mPageCount - mMaxVisibleDots, start));
+	}
 
-		int firstX = startX;
-		for (int i = 0; i < mPageCount; i++) {
-			Drawable drawable = null;
-			// if (i == mActivePageIndex) {
-			// // mIndicatorNormal.getConstantState().newDrawable(res);
-			// drawable = mIndicatorActive;
-			// } else if (i == mPressedPageIndex) {
-			// drawable = mIndicatorPressed;
-			// } else {
-			drawable = mIndicatorNormal;
-			// }
-			drawable.setBounds(startX, startY, endX, endY);
+	/**
+	 * @return the scale of the dot in the given slot of the window. Dots at
+	 *         an edge with more pages behind it shrink, the more so the
+	 *         further the window is from that end.
+	 */
+	private float getWindowDotScale(float slot) {
+		float scale = 1;
+		final float moreBefore = Math.min(1, mWindowStart);
+		if (moreBefore > 0 && slot < 1) {
+			scale = Math.min(scale, 1 - moreBefore * (1 - (slot + 1) / 2));
+		}
+		final float moreAfter = Math.min(1, mPageCount - mMaxVisibleDots
+				- mWindowStart);
+		final float slotsToEnd = mMaxVisibleDots - 1 - slot;
+		if (moreAfter > 0 && slotsToEnd < 1) {
+			scale = Math.min(scale, 1 - moreAfter * (1 - (slotsToEnd + 1) / 2));
+		}
+		return Math.max(0, scale);
+	}
+
+	private void drawWindowedDots(Canvas canvas) {
+		final int first = Math.max(0, (int) mWindowStart);
+		final int last = Math.min(mPageCount - 1, (int) Math.ceil(mWindowStart)
+				+ mMaxVisibleDots - 1);
+		final float centerY = mDotsTop + mIndicatorHeight / 2f;
+		for (int i = first; i <= last; i++) {
+			final float slot = i - mWindowStart;
+			final float scale = getWindowDotScale(slot);
+			if (scale <= 0)
+				continue;
+			final float centerX = mDotsLeft + slot * mDotStride + mDotWidth
+					/ 2f;
+			final float halfWidth = mDotWidth * scale / 2;
+			final float halfHeight = mIndicatorHeight * scale / 2;
+			final Drawable drawable = i == mActiveDot ? mIndicatorActive
+					: mIndicatorNormal;
+			drawable.setBounds(Math.round(centerX - halfWidth),
+					Math.round(centerY - halfHeight),
+					Math.round(centerX + halfWidth),
+					Math.round(centerY + halfHeight));
 			drawable.draw(canvas);
+		}
+	}
 
-			startX += (indicatorPadding + indicatorWidth);
-			endX = startX + indicatorWidth;
+	/**
+	 * Shows at most the given number of dots around the active page, sliding
+	 * the window along as the pages scroll, so drawing and touch targets stay
+	 * the same size whatever the page count. 0 shows every dot.
+	 */
+	public void setMaxVisibleDots(int maxVisibleDots) {
+		maxVisibleDots = Math.max(0, maxVisibleDots);
+		if (mMaxVisibleDots == maxVisibleDots)
+			return;
+		mMaxVisibleDots = maxVisibleDots;
+		mGeometryValid = false;
+		invalidate();
+	}
+
+	public int getMaxVisibleDots() {
+		return mMaxVisibleDots;
+	}
+
+	/**
+	 * Draws the normal dots into the cache, reusing the bitmap if its size
+	 * still fits.
+	 */
+	private void updateDotsCache() {
+		mDotsCacheValid = true;
+		final int width = mPageCount * mDotWidth + (mPageCount - 1)
+				* mDotPadding;
+		final int height = mIndicatorHeight;
+		if (width <= 0 || height <= 0) {
+			releaseDotsCache();
+			return;
+		}
+		if (mDotsCache == null || mDotsCache.getWidth() != width
+				|| mDotsCache.getHeight() != height) {
+			releaseDotsCache();
+			mDotsCache = Bitmap.createBitmap(width, height,
+					Bitmap.Config.ARGB_8888);
+		} else {
+			mDotsCache.eraseColor(0);
+		}
+		final Canvas canvas = new Canvas(mDotsCache);
+		int left = 0;
+		for (int i = 0; i < mPageCount; i++) {
+			mIndicatorNormal.setBounds(left, 0, left + mDotWidth, height);
+			mIndicatorNormal.draw(canvas);
+			left += mDotStride;
 		}
+	}
+
+	private void releaseDotsCache() {
+		if (mDotsCache != null) {
+			mDotsCache.recycle();
+			mDotsCache = null;
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		releaseDotsCache();
+		mDotsCacheValid = false;
+	}
+
+	private int getDotLeft(int index) {
+		if (mWindowed)
+			return mDotsLeft + Math.round((index - mWindowStart) * mDotStride);
+		return mDotsLeft + index * mDotStride;
+	}
 
-		int lastX = startX - (indicatorPadding + indicatorWidth);
-
-		float pageWidth = (float) (mPagedView.getScaledMeasuredWidth(mPagedView
-				.getCurrentPage()) + mPagedView.getHorizontalSpacing());
-		float pageHeight = (float) (mPagedView
-				.getScaledMeasuredHeight(mPagedView.getCurrentPage()) + mPagedView
-				.getVerticalSpacing());
-		float percent = mPagedView.getIsHorizontal() ? (float) ((mPagedView
-				.getScrollX() % pageWidth) / pageWidth) : (float) ((mPagedView
-				.getScrollY() % pageHeight) / pageHeight);
-		int pageIndex = mPagedView.getIsHorizontal() ? (int) ((mPagedView
-				.getScrollX() + pageWidth / 2) / pageWidth)
-				: (int) ((mPagedView.getScrollY() + pageHeight / 2)/ pageHeight);
-//		int leftX = (int) ((width - totalWidth) / 2
-//				+ (pageIndex * (indicatorPadding + indicatorWidth)) + percent
-//				* indicatorWidth);
-		int leftX = (int) ((width - totalWidth) / 2
-				+ (pageIndex * (indicatorPadding + indicatorWidth)));
-		if (leftX < firstX) {
-			leftX = firstX;
-		} else if (leftX > lastX) {
-			leftX = lastX;
+	/**
+	 * @return the dot of the page the viewport is closest to
+	 */
+	private int getActiveDot() {
+		if (mScrollPosition == INVALID_INDEX)
+			return Math.max(0, Math.min(mActivePageIndex, mPageCount - 1));
+		int dot = mScrollOffset >= 0.5f ? mScrollPosition + 1
+				: mScrollPosition;
+		if (dot >= mPageCount) {
+			dot = mPagedView != null && mPagedView.isAllowCirculate() ? 0
+					: mPageCount - 1;
 		}
-		mIndicatorActive.setBounds(leftX, startY, leftX + indicatorWidth,
-				startY + mIndicatorHeight);
+		return Math.max(0, dot);
+	}
+
+	@Override
+	protected void onDraw(Canvas canvas) {
+		super.onDraw(canvas);
+		if (mPageCount <= 1 || mIndicatorNormal == null
+				|| mIndicatorActive == null || mIndicatorPressed == null) {
+			return;
+		}
+		if (!mGeometryValid)
+			updateGeometry();
+		if (mWindowed) {
+			drawWindowedDots(canvas);
+			return;
+		}
+		if (!mDotsCacheValid)
+			updateDotsCache();
+
+		final int top = mDotsTop;
+		final int bottom = top + mIndicatorHeight;
+		if (mDotsCache != null)
+			canvas.drawBitmap(mDotsCache, mDotsLeft, top, null);
+
+		final int activeLeft = getDotLeft(mActiveDot);
+		mIndicatorActive.setBounds(activeLeft, top, activeLeft + mDotWidth,
+				bottom);
 		mIndicatorActive.draw(canvas);
 	}
 
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
-		int x = (int) event.getX();
-		int y = (int) event.getY();
-		int index = getIndex(x, y);
-		if (mPagedView != null && index >= 0 && index < mPageCount) {
-			mPagedView.snapToPage(index);
-		}
-		switch (event.getAction()) {
+		final int x = (int) event.getX();
+		final int y = (int) event.getY();
+		final int index = getIndex(x, y);
+		final int action = event.getAction() & MotionEvent.ACTION_MASK;
+		switch (action) {
 		case MotionEvent.ACTION_DOWN:
+			mDownX = x;
+			mPressedPageIndex = INVALID_INDEX;
+			// With scrubbing the touch is a tap only once it goes up, a snap
+			// started now would be cut short by the scrub
+			if (!mScrubEnabled)
+				snapToPressedPage(index);
+			break;
 		case MotionEvent.ACTION_MOVE:
-			mPressedPageIndex = index;
+			if (mPagedView == null)
+				break;
+			if (mScrubEnabled) {
+				if (!mScrubbing && Math.abs(x - mDownX) > mTouchSlop) {
+					mScrubbing = true;
+					mPagedView.beginScrub();
+				}
+				if (mScrubbing)
+					mPagedView.scrubTo(getScrubPosition(x));
+				break;
+			}
+			snapToPressedPage(index);
 			break;
 		case MotionEvent.ACTION_UP:
+		case MotionEvent.ACTION_CANCEL:
+			if (mScrubbing) {
+				mScrubbing = false;
+				if (mPagedView != null)
+					mPagedView.endScrub();
+				// Let the window catch up with the settled page
+				updateActiveDot();
+			} else if (mScrubEnabled && action == MotionEvent.ACTION_UP) {
+				snapToPressedPage(index);
+			}
 			mPressedPageIndex = INVALID_INDEX;
+			break;
 		}
-		invalidate();
 		// return super.onTouchEvent(event);
 		return true;
 	}
 
-	private int getIndex(int x, int y) {
-		int index = INVALID_INDEX;
-
-		int width = getWidth();
-		int totalWidth = mPageCount * mIndicatorWidth + (mPageCount - 1)
-				* mIndicatorPadding;
-		float scaleX = (float) width / (float) totalWidth;
-
-		int indicatorWidth = mIndicatorWidth;
-		int indicatorPadding = mIndicatorPadding;
-		if (scaleX < 1) {
-			indicatorWidth = (int) (mIndicatorWidth * scaleX);
-			indicatorPadding = (int) (mIndicatorPadding * scaleX);
-			totalWidth = mPageCount * indicatorWidth + (mPageCount - 1)
-					* indicatorPadding;
+	/**
+	 * Snaps to the dot under the finger unless the last snap already went
+	 * there, so crossing dots animates only towards the last one.
+	 */
+	private void snapToPressedPage(int index) {
+		if (index == mPressedPageIndex)
+			return;
+		mPressedPageIndex = index;
+		if (mPagedView != null && index >= 0 && index < mPageCount) {
+			mPagedView.jumpToPage(index);
 		}
-
-		int startX = (width - totalWidth) / 2;
-
-		index = (x - startX) / (indicatorWidth + indicatorPadding);
-
-		return index;
 	}
 
-	private int[] getXY(int index) {
-		int[] XY = new int[2];
-
-		int width = getWidth();
-		int totalWidth = mPageCount * mIndicatorWidth + (mPageCount - 1)
-				* mIndicatorPadding;
-		int height = getHeight();
-		int totalHeight = mIndicatorHeight;
+	/**
+	 * @return the page position under x, between dots while the finger is
+	 *         between them. The window of the windowed mode stands still
+	 *         during a scrub.
+	 */
+	private float getScrubPosition(int x) {
+		if (!mGeometryValid)
+			updateGeometry();
+		if (mDotStride <= 0)
+			return 0;
+		float position = (x - mDotsLeft - mDotWidth / 2f) / mDotStride;
+		if (mWindowed)
+			position += mWindowStart;
+		return Math.max(0, Math.min(mPageCount - 1, position));
+	}
 
-		int startX = (width - totalWidth) / 2 + index
-				* (mIndicatorWidth + mIndicatorPadding);
-		int startY = (height - totalHeight) / 2;
+	/**
+	 * While the finger drags over the dots, the pages follow it directly and
+	 * settle on the closest page once it lifts, and a tap snaps when it lifts
+	 * instead of when it goes down. Otherwise every dot touched snaps to its
+	 * page as soon as it is touched. Off by default.
+	 */
+	public void setScrubEnabled(boolean enabled) {
+		mScrubEnabled = enabled;
+	}
 
-		XY[0] = startX;
-		XY[1] = startY;
+	public boolean isScrubEnabled() {
+		return mScrubEnabled;
+	}
 
-		return XY;
+	private int getIndex(int x, int y) {
+		if (mPageCount <= 0)
+			return INVALID_INDEX;
+		if (!mGeometryValid)
+			updateGeometry();
+		if (x < mDotsLeft || mDotStride <= 0)
+			return INVALID_INDEX;
+		if (mWindowed) {
+			final int slot = (x - mDotsLeft) / mDotStride;
+			if (slot >= mMaxVisibleDots)
+				return INVALID_INDEX;
+			return Math.min(mPageCount - 1, Math.round(slot + mWindowStart));
+		}
+		return (x - mDotsLeft) / mDotStride;
 	}
 
 	@Override
 	public void onSetToPage(int curPage, int destPage) {
 		mActivePageIndex = destPage;
+		updateActiveDot();
 		invalidate();
 	}
 
@@ -259,10 +465,55 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 		invalidate();
 	}
 
+	@Override
+	public void onPageScrolled(int position, float positionOffset,
+			int positionOffsetPixels) {
+		mScrollPosition = position;
+		mScrollOffset = positionOffset;
+		updateActiveDot();
+	}
+
+	private void updateActiveDot() {
+		final int activeDot = getActiveDot();
+		if (mWindowed && mGeometryValid) {
+			// The whole row moves while the window slides
+			final float windowStart = mScrubbing ? mWindowStart
+					: getWindowStart();
+			if (windowStart != mWindowStart || activeDot != mActiveDot) {
+				mWindowStart = windowStart;
+				mActiveDot = activeDot;
+				invalidate();
+			}
+			return;
+		}
+		if (activeDot != mActiveDot) {
+			invalidateDot(mActiveDot);
+			mActiveDot = activeDot;
+			invalidateDot(mActiveDot);
+		}
+	}
+
+	private void invalidateDot(int index) {
+		if (!mGeometryValid) {
+			invalidate();
+			return;
+		}
+		final int left = getDotLeft(index);
+		invalidate(left, mDotsTop, left + mDotWidth, mDotsTop
+				+ mIndicatorHeight);
+	}
+
+	@Override
+	public void onPageScrollStateChanged(int state) {
+	}
+
 	public void onPageCountChanged(int pages) {
 		mPageCount = pages;
+		mGeometryValid = false;
 		if (mPagedView != null)
 			mActivePageIndex = mPagedView.getCurrentPage();
+		mScrollPosition = INVALID_INDEX;
+		mActiveDot = getActiveDot();
 		// if(mPageCount <= 1) {
 		// setVisibility(View.GONE);
 		// } else {
@@ -308,6 +559,8 @@ public class PagedViewIndicator extends View implements PagedViewListener,
 		mIndicatorNormal = d;
 		mIndicatorHeight = d.getIntrinsicHeight();
 		mIndicatorWidth = d.getIntrinsicWidth();
+		mGeometryValid = false;
+		mDotsCacheValid = false;
 		requestLayout();
 		invalidate();
 	}
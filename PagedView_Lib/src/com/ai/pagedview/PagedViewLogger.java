@@ -0,0 +1,94 @@
+package com.ai.pagedview;
+
+/**
+ * Receives structured diagnostic events from a {@link PagedView}, see
+ * {@link PagedView#setLogger(PagedViewLogger)}. All events are delivered on
+ * the UI thread with primitive arguments only, except for the error of a
+ * failed load, so the default {@link #NONE} logger costs an empty call and
+ * allocates nothing.
+ *
+ */
+public interface PagedViewLogger {
+	/**
+	 * The logger used when none is set, ignores every event.
+	 */
+	public static final PagedViewLogger NONE = new Adapter();
+
+	/**
+	 * A touch went down on the view.
+	 *
+	 * @param caughtSnap
+	 *            true if the touch caught a running snap and continues it as
+	 *            a drag
+	 */
+	public void onTouchDown(int page, boolean caughtSnap);
+
+	/**
+	 * A running snap to targetPage was stopped by a touch and the view settled
+	 * on it immediately.
+	 */
+	public void onSnapInterrupted(int page, int targetPage);
+
+	/**
+	 * A drag was released.
+	 *
+	 * @param velocity
+	 *            the release velocity along the paging axis in pixels per
+	 *            second
+	 * @param fling
+	 *            true if the release counts as a fling
+	 */
+	public void onTouchRelease(int page, int velocity, boolean fling);
+
+	/**
+	 * A snap animation started.
+	 *
+	 * @param delta
+	 *            the distance to travel in pixels
+	 * @param duration
+	 *            the duration in milliseconds
+	 */
+	public void onSnapStarted(int fromPage, int toPage, int delta,
+			int duration);
+
+	/**
+	 * A snap animation ended and the view settled on the page.
+	 */
+	public void onSnapFinished(int page);
+
+	/**
+	 * Loading the content of a page threw. The load is retried the next time
+	 * the preload window moves or the view is attached again.
+	 */
+	public void onPageLoadFailed(int page, Throwable error);
+
+	/**
+	 * Ignores every event, extend it to handle only some of them.
+	 */
+	public static class Adapter implements PagedViewLogger {
+		@Override
+		public void onTouchDown(int page, boolean caughtSnap) {
+		}
+
+		@Override
+		public void onSnapInterrupted(int page, int targetPage) {
+		}
+
+		@Override
+		public void onTouchRelease(int page, int velocity, boolean fling) {
+		}
+
+		@Override
+		public void onSnapStarted(int fromPage, int toPage, int delta,
+				int duration) {
+		}
+
+		@Override
+		public void onSnapFinished(int page) {
+		}
+
+		@Override
+		public void onPageLoadFailed(int page, Throwable error) {
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.ai.pagedview;
+
+/**
+ * Implemented by page views that want to pause expensive work, such as image
+ * decoding, video playback or prefetching, while the pages of their
+ * {@link PagedView} move. A page attached while the pages move can read the
+ * current state from {@link PagedView#getScrollState()}.
+ *
+ */
+public interface ScrollStateAware {
+	/**
+	 * Called on every attached page when the scroll state changes.
+	 *
+	 * @param state
+	 *            {@link PagedView#SCROLL_STATE_IDLE},
+	 *            {@link PagedView#SCROLL_STATE_DRAGGING} or
+	 *            {@link PagedView#SCROLL_STATE_SETTLING}
+	 */
+	public void onScrollStateChanged(int state);
+}
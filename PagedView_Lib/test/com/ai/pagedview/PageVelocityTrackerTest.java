@@ -0,0 +1,98 @@
+package com.ai.pagedview;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs on a plain JVM, {@link PageVelocityTracker} does not depend on the
+ * platform.
+ *
+ */
+public class PageVelocityTrackerTest {
+	private static final float NO_LIMIT = Float.MAX_VALUE;
+	private static final long FRAME_MILLIS = 8;
+
+	private PageVelocityTracker mTracker;
+
+	@Before
+	public void setUp() {
+		mTracker = new PageVelocityTracker();
+	}
+
+	@Test
+	public void constantVelocity() {
+		// 1.5 pixels per millisecond along x
+		for (int i = 0; i < 20; i++) {
+			final long time = 1000 + i * FRAME_MILLIS;
+			mTracker.addSample(100 + 1.5f * i * FRAME_MILLIS, 50, time);
+		}
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(1500, mTracker.getXVelocity(), 1);
+		assertEquals(0, mTracker.getYVelocity(), 0.001f);
+	}
+
+	@Test
+	public void acceleratingGivesSlopeAtNewestSample() {
+		// x = 0.01 t^2, so the velocity at t is 0.02 t pixels per millisecond
+		long t = 0;
+		for (int i = 0; i <= 15; i++) {
+			t = i * FRAME_MILLIS;
+			mTracker.addSample(0.01f * t * t, 0, 2000 + t);
+		}
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(0.02f * t * 1000, mTracker.getXVelocity(), 5);
+	}
+
+	@Test
+	public void onlySamplesInsideHorizonCount() {
+		// A fast move followed by 120ms of slow samples, past the 100ms
+		// horizon the fast part no longer counts
+		for (int i = 0; i < 5; i++)
+			mTracker.addSample(20 * i, 0, 3000 + i * FRAME_MILLIS);
+		final long start = 3000 + 4 * FRAME_MILLIS;
+		for (int i = 1; i <= 15; i++)
+			mTracker.addSample(80 + 0.5f * i * FRAME_MILLIS, 0, start + i
+					* FRAME_MILLIS);
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(500, mTracker.getXVelocity(), 1);
+	}
+
+	@Test
+	public void stoppedFingerAfterGap() {
+		for (int i = 0; i < 10; i++)
+			mTracker.addSample(10 * i, 0, 4000 + i * FRAME_MILLIS);
+		// Held still for longer than the 40ms stop gap before the next sample
+		mTracker.addSample(90, 0, 4000 + 9 * FRAME_MILLIS + 50);
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(0, mTracker.getXVelocity(), 0.001f);
+	}
+
+	@Test
+	public void stoppedFingerStillSendingSamples() {
+		for (int i = 0; i < 10; i++)
+			mTracker.addSample(10 * i, 0, 5000 + i * FRAME_MILLIS);
+		final long start = 5000 + 9 * FRAME_MILLIS;
+		for (int i = 1; i <= 15; i++)
+			mTracker.addSample(90, 0, start + i * FRAME_MILLIS);
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(0, mTracker.getXVelocity(), 0.01f);
+	}
+
+	@Test
+	public void velocityIsClamped() {
+		for (int i = 0; i < 5; i++)
+			mTracker.addSample(-100 * i, 0, 6000 + i * FRAME_MILLIS);
+		mTracker.computeCurrentVelocity(1000, 8000);
+		assertEquals(-8000, mTracker.getXVelocity(), 0);
+	}
+
+	@Test
+	public void singleSampleHasNoVelocity() {
+		mTracker.addSample(10, 10, 7000);
+		mTracker.computeCurrentVelocity(1000, NO_LIMIT);
+		assertEquals(0, mTracker.getXVelocity(), 0);
+		assertEquals(0, mTracker.getYVelocity(), 0);
+	}
+}